@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("org.jetbrains.kotlin.jvm") version "1.9.24"
     id("org.jetbrains.intellij") version "1.17.3"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "dev.mave"
@@ -11,11 +12,33 @@ repositories {
     mavenCentral()
 }
 
+dependencies {
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.10.2")
+}
+
 intellij {
     version.set("2022.3")
     updateSinceUntilBuild.set(true)
 }
 
+// A headless load test of the webhook request path, run with ./gradlew loadTest
+// and options such as -PloadTestArgs="--deliveries=2000 --concurrency=64 --payload-kb=100"
+sourceSets {
+    create("loadTest") {
+        compileClasspath += sourceSets.main.get().output + configurations.testCompileClasspath.get()
+        runtimeClasspath += output + compileClasspath + configurations.testRuntimeClasspath.get()
+    }
+}
+
+// Benchmarks of the webhook hot path live in src/jmh/java. Run them with ./gradlew jmh,
+// or pick some with e.g. ./gradlew jmh -PjmhIncludes=FieldExtraction
+jmh {
+    jmhVersion.set("1.37")
+    (findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+    resultFormat.set("JSON")
+}
+
 tasks {
     withType<JavaCompile> {
         sourceCompatibility = "17"
@@ -25,6 +48,18 @@ tasks {
         kotlinOptions.jvmTarget = "17"
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
+    register<JavaExec>("loadTest") {
+        group = "verification"
+        description = "Fires concurrent push deliveries at a headless listener and reports latencies"
+        classpath = sourceSets["loadTest"].runtimeClasspath
+        mainClass.set("dev.mave.gitupdatelistener.plugin.loadtest.LoadTest")
+        (project.findProperty("loadTestArgs") as String?)?.let { args(it.split(" ")) }
+    }
+
     patchPluginXml {
         sinceBuild.set("223")
         untilBuild.set("251.*")
@@ -0,0 +1,62 @@
+package dev.mave.gitupdatelistener.plugin.benchmark;
+
+import dev.mave.gitupdatelistener.plugin.server.BufferPool;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequest;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequestParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a whole delivery, head and body, off an in-memory stream
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class BodyReadingBenchmark {
+    @Param({"5KB", "100KB", "1MB", "25MB"})
+    public String payloadSize;
+
+    @Param({"false", "true"})
+    public boolean directBuffers;
+
+    private byte[] request;
+    private BufferPool pool;
+
+    @Setup
+    public void setUp() {
+        request = Payloads.request(Payloads.pushPayload(Payloads.parseSize(payloadSize), "main"));
+        pool = new BufferPool(BufferPool.DEFAULT_CHUNK_SIZE, directBuffers, 512);
+    }
+
+    @Benchmark
+    public int legacyReader() throws IOException {
+        // The legacy reader has no buffers to choose, so its score is the same for either directBuffers value
+        return LegacyWebhookHandling.read(new ByteArrayInputStream(request)).payload.length();
+    }
+
+    @Benchmark
+    public long httpRequestParser() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(new ByteArrayInputStream(request), OutputStream.nullOutputStream(),
+                pool, HttpRequestParser.DEFAULT_MAX_HEADER_SIZE, Integer.MAX_VALUE);
+        try (HttpRequest parsed = parser.readRequest()) {
+            return parsed.getBody().size();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dev.mave.gitupdatelistener.plugin.benchmark;
+
+import dev.mave.gitupdatelistener.plugin.webhook.PayloadParseException;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import dev.mave.gitupdatelistener.plugin.webhook.PushField;
+import dev.mave.gitupdatelistener.plugin.webhook.PushPayloadParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting the ref, repository and head commit details out of a push payload that has already been read
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class FieldExtractionBenchmark {
+    /** The fields TriggerService asks for */
+    private static final Set<PushField> PUSH_FIELDS = EnumSet.of(PushField.REF, PushField.REPOSITORY_FULL_NAME,
+            PushField.HEAD_COMMIT_ID, PushField.HEAD_COMMIT_MESSAGE, PushField.HEAD_COMMIT_AUTHOR_NAME);
+
+    @Param({"5KB", "100KB", "1MB", "25MB"})
+    public String payloadSize;
+
+    private byte[] payload;
+    private ByteBuffer[] chunks;
+    private final PushPayloadParser parser = new PushPayloadParser();
+
+    @Setup
+    public void setUp() {
+        payload = Payloads.pushPayload(Payloads.parseSize(payloadSize), "main");
+        // Split the way RequestBody holds it, in pooled 64 KB chunks
+        int chunkSize = 64 * 1024;
+        chunks = new ByteBuffer[(payload.length + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            int offset = i * chunkSize;
+            chunks[i] = ByteBuffer.wrap(payload, offset, Math.min(chunkSize, payload.length - offset)).slice();
+        }
+    }
+
+    @Benchmark
+    public void legacyIndexOf(Blackhole blackhole) {
+        // The legacy path decoded the whole body to a String before looking at it
+        String text = new String(payload, StandardCharsets.UTF_8);
+        if (LegacyWebhookHandling.matchesBranch(text, "main")) {
+            blackhole.consume(LegacyWebhookHandling.extractCommitMessage(text));
+            blackhole.consume(LegacyWebhookHandling.extractAuthorName(text));
+            blackhole.consume(LegacyWebhookHandling.extractRepoName(text));
+        }
+    }
+
+    @Benchmark
+    public PushEvent pushPayloadParser() throws PayloadParseException {
+        return parser.parse(chunks, PUSH_FIELDS);
+    }
+
+    @Benchmark
+    public PushEvent pushPayloadParserChangedPaths() throws PayloadParseException {
+        return parser.parse(chunks, EnumSet.allOf(PushField.class));
+    }
+}
@@ -0,0 +1,54 @@
+package dev.mave.gitupdatelistener.plugin.benchmark;
+
+import dev.mave.gitupdatelistener.plugin.server.BufferPool;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequest;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequestParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the head of a GitHub delivery that has no body
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderParsingBenchmark {
+    private byte[] request;
+    private BufferPool pool;
+
+    @Setup
+    public void setUp() {
+        request = Payloads.requestHead(0).getBytes(StandardCharsets.US_ASCII);
+        pool = new BufferPool(BufferPool.DEFAULT_CHUNK_SIZE, false, 64);
+    }
+
+    @Benchmark
+    public String legacyReader() throws IOException {
+        return LegacyWebhookHandling.read(new ByteArrayInputStream(request)).eventType;
+    }
+
+    @Benchmark
+    public String httpRequestParser() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser(new ByteArrayInputStream(request), OutputStream.nullOutputStream(), pool);
+        try (HttpRequest parsed = parser.readRequest()) {
+            return parsed.getHeader("X-GitHub-Event");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dev.mave.gitupdatelistener.plugin.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The request handling the listener shipped with before the byte-level parsers, kept as the baseline:
+ * a {@link BufferedReader} over the socket, {@code startsWith} on header lines, a {@code contains}
+ * check for the ref and {@code indexOf} scans for the announced fields.
+ */
+final class LegacyWebhookHandling {
+    private LegacyWebhookHandling() {
+    }
+
+    static final class Request {
+        String eventType;
+        int contentLength;
+        String payload;
+    }
+
+    static Request read(InputStream input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Request request = new Request();
+
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            if (line.startsWith("X-GitHub-Event:")) {
+                request.eventType = line.substring("X-GitHub-Event:".length()).trim();
+            } else if (line.startsWith("Content-Length:")) {
+                request.contentLength = Integer.parseInt(line.substring("Content-Length:".length()).trim());
+            }
+        }
+
+        StringBuilder payloadBuilder = new StringBuilder();
+        if (request.contentLength > 0) {
+            char[] buffer = new char[request.contentLength];
+            // The original did a single read(); loop so large bodies are read completely and the comparison is fair
+            int read = 0;
+            int n;
+            while (read < buffer.length && (n = reader.read(buffer, read, buffer.length - read)) > 0) {
+                read += n;
+            }
+            payloadBuilder.append(buffer, 0, read);
+        }
+        request.payload = payloadBuilder.toString();
+        return request;
+    }
+
+    static boolean matchesBranch(String payload, String targetBranch) {
+        return payload.contains("\"ref\":\"refs/heads/" + targetBranch + "\"");
+    }
+
+    static String extractCommitMessage(String payload) {
+        try {
+            int headCommitIndex = payload.indexOf("\"head_commit\":");
+            if (headCommitIndex >= 0) {
+                int messageStart = payload.indexOf("\"message\":\"", headCommitIndex) + 11;
+                int messageEnd = payload.indexOf("\"", messageStart);
+                return payload.substring(messageStart, messageEnd);
+            }
+        } catch (Exception ignored) {
+        }
+        return "No commit message available";
+    }
+
+    static String extractAuthorName(String payload) {
+        try {
+            int headCommitIndex = payload.indexOf("\"head_commit\":");
+            if (headCommitIndex >= 0) {
+                int authorIndex = payload.indexOf("\"author\":", headCommitIndex);
+                int nameStart = payload.indexOf("\"name\":\"", authorIndex) + 8;
+                int nameEnd = payload.indexOf("\"", nameStart);
+                return payload.substring(nameStart, nameEnd);
+            }
+        } catch (Exception ignored) {
+        }
+        return "Unknown";
+    }
+
+    static String extractRepoName(String payload) {
+        try {
+            int repoIndex = payload.indexOf("\"repository\":");
+            if (repoIndex >= 0) {
+                int nameStart = payload.indexOf("\"name\":\"", repoIndex) + 8;
+                int nameEnd = payload.indexOf("\"", nameStart);
+                return payload.substring(nameStart, nameEnd);
+            }
+        } catch (Exception ignored) {
+        }
+        return "Unknown";
+    }
+}
@@ -0,0 +1,101 @@
+package dev.mave.gitupdatelistener.plugin.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds realistic GitHub push deliveries of a given size for the benchmarks.
+ * <p>
+ * The fields follow GitHub's order, so {@code head_commit} comes after the {@code commits} array
+ * and a parser has to get past every commit to reach it. Larger payloads simply carry more commits.
+ */
+final class Payloads {
+    private Payloads() {
+    }
+
+    /**
+     * Parse a size like "5KB", "1MB" or "25MB" into bytes
+     */
+    static int parseSize(String size) {
+        if (size.endsWith("MB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024 * 1024;
+        }
+        if (size.endsWith("KB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024;
+        }
+        return Integer.parseInt(size);
+    }
+
+    /**
+     * A push payload of at least {@code size} bytes
+     */
+    static byte[] pushPayload(int size, String branch) {
+        StringBuilder json = new StringBuilder(size + 4096);
+        json.append("{\"ref\":\"refs/heads/").append(branch).append("\",")
+                .append("\"before\":\"6113728f27ae82c7b1a177c8d03f9e96e0adf246\",")
+                .append("\"after\":\"0d1a26e67d8f5eaf1f6ba5c57fc3c7d91ac0fd1c\",")
+                .append("\"repository\":{\"id\":186853002,\"node_id\":\"MDEwOlJlcG9zaXRvcnkxODY4NTMwMDI=\",")
+                .append("\"name\":\"git-update-listener\",\"full_name\":\"MaveTheCorgi/git-update-listener\",")
+                .append("\"private\":false,\"owner\":{\"name\":\"MaveTheCorgi\",\"login\":\"MaveTheCorgi\",\"id\":21031067},")
+                .append("\"html_url\":\"https://github.com/MaveTheCorgi/git-update-listener\",")
+                .append("\"description\":\"Restarts run configurations on push\",\"default_branch\":\"main\"},")
+                .append("\"pusher\":{\"name\":\"MaveTheCorgi\",\"email\":\"mave@example.com\"},")
+                .append("\"sender\":{\"login\":\"MaveTheCorgi\",\"id\":21031067,\"type\":\"User\"},")
+                .append("\"created\":false,\"deleted\":false,\"forced\":false,\"base_ref\":null,")
+                .append("\"compare\":\"https://github.com/MaveTheCorgi/git-update-listener/compare/6113728f27ae...0d1a26e67d8f\",")
+                .append("\"commits\":[");
+        int commit = 0;
+        // Leave room for the head commit and the closing brackets
+        while (json.length() < size - 700 || commit == 0) {
+            if (commit > 0) json.append(',');
+            appendCommit(json, commit++);
+        }
+        json.append("],\"head_commit\":");
+        appendCommit(json, commit);
+        json.append('}');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendCommit(StringBuilder json, int n) {
+        json.append("{\"id\":\"").append(String.format("%040x", n)).append("\",")
+                .append("\"tree_id\":\"f9d2a07e9488b91af2641b26b9407fe22a451433\",\"distinct\":true,")
+                .append("\"message\":\"Fix the build, part ").append(n).append("\\n\\nSee #").append(n).append("\",")
+                .append("\"timestamp\":\"2024-05-07T12:34:56+02:00\",")
+                .append("\"url\":\"https://github.com/MaveTheCorgi/git-update-listener/commit/").append(n).append("\",")
+                .append("\"author\":{\"name\":\"Mave\",\"email\":\"mave@example.com\",\"username\":\"MaveTheCorgi\"},")
+                .append("\"committer\":{\"name\":\"GitHub\",\"email\":\"noreply@github.com\",\"username\":\"web-flow\"},")
+                .append("\"added\":[\"src/main/java/dev/mave/Added").append(n).append(".java\"],")
+                .append("\"removed\":[],")
+                .append("\"modified\":[\"README.md\",\"src/main/java/dev/mave/Modified").append(n).append(".java\"]}");
+    }
+
+    /**
+     * The head of a delivery the way GitHub sends it
+     */
+    static String requestHead(int contentLength) {
+        return "POST / HTTP/1.1\r\n" +
+                "Host: example.com:12345\r\n" +
+                "Accept: */*\r\n" +
+                "User-Agent: GitHub-Hookshot/e5a1e3f\r\n" +
+                "X-GitHub-Delivery: 72d3162e-cc78-11e3-81ab-4c9367dc0958\r\n" +
+                "X-GitHub-Event: push\r\n" +
+                "X-GitHub-Hook-ID: 292430182\r\n" +
+                "X-GitHub-Hook-Installation-Target-ID: 79929171\r\n" +
+                "X-GitHub-Hook-Installation-Target-Type: repository\r\n" +
+                "X-Hub-Signature: sha1=7d38cdd689735b008b3c702edd92eea23791c5f6\r\n" +
+                "X-Hub-Signature-256: sha256=d57c68ca6f92289e6987922ff26938930f6e66a2d161ef06abdf1859230aa23c\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Content-Length: " + contentLength + "\r\n" +
+                "\r\n";
+    }
+
+    /**
+     * A complete delivery: head and body
+     */
+    static byte[] request(byte[] body) {
+        byte[] head = requestHead(body.length).getBytes(StandardCharsets.US_ASCII);
+        byte[] request = new byte[head.length + body.length];
+        System.arraycopy(head, 0, request, 0, head.length);
+        System.arraycopy(body, 0, request, head.length, body.length);
+        return request;
+    }
+}
@@ -0,0 +1,72 @@
+package dev.mave.gitupdatelistener.plugin.benchmark;
+
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import dev.mave.gitupdatelistener.plugin.webhook.RuleIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deciding which rules a push triggers, once its ref and repository are known
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefMatchingBenchmark {
+    @Param({"1", "10", "100"})
+    public int ruleCount;
+
+    private RuleIndex index;
+    private List<String> legacyBranches;
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        List<TriggerRule> rules = new ArrayList<>(ruleCount);
+        legacyBranches = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            // A quarter of the rules are globs, the rest literal branches
+            String pattern = i % 4 == 3 ? "release-" + i + "/*" : "feature-" + i;
+            rules.add(new TriggerRule("MaveTheCorgi/service-" + (i % 3), pattern, "", "config-" + i));
+            legacyBranches.add("feature-" + i);
+        }
+        // The matching rule is the last literal one, the worst case for a scan
+        rules.add(new TriggerRule("MaveTheCorgi/git-update-listener", "main", "", "runProduction"));
+        legacyBranches.add("main");
+        index = new RuleIndex(rules);
+        payload = new String(Payloads.pushPayload(5 * 1024, "main"), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int legacyContains() {
+        // The legacy listener had one branch and searched the payload for it; with several it would search once per branch
+        int matches = 0;
+        for (String branch : legacyBranches) {
+            if (LegacyWebhookHandling.matchesBranch(payload, branch)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int ruleIndex() {
+        return index.match("MaveTheCorgi/git-update-listener", "refs/heads/main").size();
+    }
+}
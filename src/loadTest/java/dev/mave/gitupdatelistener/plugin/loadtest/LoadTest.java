@@ -0,0 +1,316 @@
+package dev.mave.gitupdatelistener.plugin.loadtest;
+
+import dev.mave.gitupdatelistener.plugin.WebhookRequestHandler;
+import dev.mave.gitupdatelistener.plugin.discord.DiscordEmbed;
+import dev.mave.gitupdatelistener.plugin.discord.DiscordNotifier;
+import dev.mave.gitupdatelistener.plugin.git.GitSync;
+import dev.mave.gitupdatelistener.plugin.journal.DeliveryJournal;
+import dev.mave.gitupdatelistener.plugin.metrics.LatencyHistogram;
+import dev.mave.gitupdatelistener.plugin.metrics.TriggerMetrics;
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import dev.mave.gitupdatelistener.plugin.model.TriggerSettings;
+import dev.mave.gitupdatelistener.plugin.pipeline.CoalescingTriggerScheduler;
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerRun;
+import dev.mave.gitupdatelistener.plugin.server.ListenerEndpoint;
+import dev.mave.gitupdatelistener.plugin.server.WebhookServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fires bursts of push deliveries at the real webhook request path and reports how it holds up.
+ * <p>
+ * The listener runs headless on an ephemeral port: {@link WebhookServer} and {@link WebhookRequestHandler}
+ * feed the real {@link CoalescingTriggerScheduler}, as in the plugin. Only the IntelliJ-specific restart
+ * is stubbed: a triggered run syncs a checkout with a local bare repository and announces itself through
+ * the real {@link DiscordNotifier} to a local stub. Deliveries are journaled, with real syncs, in a scratch
+ * directory. Run it with {@code ./gradlew loadTest}, passing options such as
+ * {@code -PloadTestArgs="--deliveries=2000 --concurrency=64"}.
+ */
+public final class LoadTest {
+    private final int deliveries;
+    private final int concurrency;
+    private final int payloadSize;
+    private final int configs;
+    private final int coalesceWindowMs;
+    private final int maxConnections;
+    private final String secret;
+    private final int rateLimitPerMinute;
+
+    private final List<Long> ackLatencies = new ArrayList<>();
+    private final List<Long> triggerLatencies = new ArrayList<>();
+    /** Deliveries not yet covered by an announced restart, by config and then sequence, with the time they were sent */
+    private final Map<String, NavigableMap<Long, Long>> untriggered = new ConcurrentHashMap<>();
+    private final AtomicInteger failedDeliveries = new AtomicInteger();
+    private final AtomicInteger announcedRestarts = new AtomicInteger();
+    private final AtomicInteger fastForwards = new AtomicInteger();
+    private final AtomicInteger upToDateSyncs = new AtomicInteger();
+
+    private LoadTest(Map<String, String> options) {
+        deliveries = intOption(options, "deliveries", 500);
+        concurrency = intOption(options, "concurrency", 32);
+        payloadSize = intOption(options, "payload-kb", 25) * 1024;
+        configs = intOption(options, "configs", 4);
+        coalesceWindowMs = intOption(options, "coalesce-ms", 200);
+        maxConnections = intOption(options, "max-connections", 16);
+        secret = options.getOrDefault("secret", "load-test-secret");
+        // Every client shares one address here, so no limit unless asked for
+        rateLimitPerMinute = intOption(options, "rate-limit", 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new ConcurrentHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Options look like --name=value: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadTest(options).run();
+        // The JDK HTTP server and client leave non-daemon threads behind
+        System.exit(0);
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private void run() throws Exception {
+        TriggerSettings settings = new TriggerSettings();
+        settings.listenPort = 0;
+        settings.coalesceWindowMs = coalesceWindowMs;
+        settings.maxConnections = maxConnections;
+        settings.rateLimitPerMinute = rateLimitPerMinute;
+        for (int i = 0; i < configs; i++) {
+            settings.rules.add(new TriggerRule(repository(i), "main", "", configName(i)));
+            untriggered.put(configName(i), new ConcurrentSkipListMap<>());
+        }
+
+        TriggerMetrics metrics = new TriggerMetrics();
+        ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService restarts = Executors.newFixedThreadPool(4);
+        try (LocalGitRepository repository = new LocalGitRepository();
+             DeliveryJournal journal = DeliveryJournal.open(repository.scratchDirectory("journal"),
+                     DeliveryJournal.DEFAULT_DEDUP_CAPACITY);
+             StubDiscord discord = new StubDiscord(this::restarted);
+             DiscordNotifier notifier = new DiscordNotifier(() -> settings.discordWebhookUrl,
+                     metrics.getHistogram(TriggerMetrics.Stage.NOTIFY))) {
+            settings.discordWebhookUrl = discord.getUrl().toString();
+            // Give the first sync something to fetch, later ones find the checkout already there
+            String head = repository.commit("Change under load");
+
+            CoalescingTriggerScheduler scheduler = new CoalescingTriggerScheduler(timers, () -> settings.coalesceWindowMs,
+                    run -> restart(run, repository, notifier, metrics, restarts)
+                            .thenRun(() -> journal.complete(run.getKey(), run.getJournalSequence(), run.getEvent().getHeadCommitId())));
+            WebhookServer server = new WebhookServer("Load-Test-Listener",
+                    new ListenerEndpoint("127.0.0.1", 0, ListenerEndpoint.DEFAULT_BACKLOG, true), settings.maxConnections,
+                    new WebhookRequestHandler(() -> settings, () -> secret, metrics, journal, scheduler::submit));
+            server.start();
+            try {
+                long sendingNanos = send(URI.create("http://127.0.0.1:" + server.getLocalPort() + "/"), head);
+                boolean settled = awaitTriggers(TimeUnit.SECONDS.toNanos(30) + TimeUnit.MILLISECONDS.toNanos(coalesceWindowMs));
+                report(sendingNanos, settled, discord.getMessages(), metrics);
+            } finally {
+                server.close();
+                scheduler.cancelAll();
+            }
+        } finally {
+            timers.shutdownNow();
+            restarts.shutdownNow();
+        }
+    }
+
+    private static String repository(int config) {
+        return "load/service-" + config;
+    }
+
+    private static String configName(int config) {
+        return "service-" + config;
+    }
+
+    /**
+     * Send every delivery from {@code concurrency} threads at once
+     *
+     * @return how long sending took
+     */
+    private long send(URI endpoint, String head) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        PushDeliveries pushes = new PushDeliveries(endpoint, payloadSize, secret, head);
+        AtomicLong nextSequence = new AtomicLong();
+        ExecutorService senders = Executors.newFixedThreadPool(concurrency);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            senders.execute(() -> {
+                long sequence;
+                while ((sequence = nextSequence.getAndIncrement()) < deliveries) {
+                    int config = (int) (sequence % configs);
+                    var request = pushes.delivery(repository(config), sequence);
+                    long sentNanos = System.nanoTime();
+                    untriggered.get(configName(config)).put(sequence, sentNanos);
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        long ackNanos = System.nanoTime() - sentNanos;
+                        synchronized (ackLatencies) {
+                            ackLatencies.add(ackNanos);
+                        }
+                        if (response.statusCode() != 200) {
+                            failed(config, sequence);
+                        }
+                    } catch (IOException e) {
+                        failed(config, sequence);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        senders.shutdown();
+        senders.awaitTermination(1, TimeUnit.HOURS);
+        return System.nanoTime() - startNanos;
+    }
+
+    private void failed(int config, long sequence) {
+        failedDeliveries.incrementAndGet();
+        untriggered.get(configName(config)).remove(sequence);
+    }
+
+    /**
+     * The stand-in for the IntelliJ pipeline: sync, then announce
+     */
+    private CompletableFuture<Void> restart(TriggerRun run, LocalGitRepository repository, DiscordNotifier notifier,
+                                                   TriggerMetrics metrics, ExecutorService executor) {
+        return CompletableFuture.runAsync(() -> {
+            if (run.isCancelled()) {
+                throw new CancellationException("Trigger run cancelled");
+            }
+            long syncStartNanos = System.nanoTime();
+            try {
+                // Runs share one checkout, as rules for one project share a working tree
+                GitSync.Result result;
+                synchronized (repository) {
+                    result = repository.sync(run.getEvent().getAfter());
+                }
+                if (result == GitSync.Result.OTHER_BRANCH) {
+                    throw new IllegalStateException("The checkout left main");
+                }
+                (result == GitSync.Result.FAST_FORWARDED ? fastForwards : upToDateSyncs).incrementAndGet();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            metrics.record(TriggerMetrics.Stage.SYNC, System.nanoTime() - syncStartNanos);
+            notifier.enqueue(new DiscordEmbed("Restarted " + run.getTargetConfigName(),
+                    String.valueOf(run.getEvent().getHeadCommitMessage()), "Load test", Instant.now()));
+        }, executor).whenComplete((v, e) -> metrics.triggerFinished(outcome(e)));
+    }
+
+    private static TriggerMetrics.Outcome outcome(Throwable e) {
+        if (e == null) {
+            return TriggerMetrics.Outcome.SUCCEEDED;
+        }
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof CancellationException ? TriggerMetrics.Outcome.CANCELLED : TriggerMetrics.Outcome.FAILED;
+    }
+
+    /**
+     * A restart was announced for a delivery. It covers every earlier delivery for the same config,
+     * since those were coalesced into it.
+     */
+    private void restarted(String configName, long sequence) {
+        announcedRestarts.incrementAndGet();
+        long now = System.nanoTime();
+        NavigableMap<Long, Long> pending = untriggered.get(configName);
+        if (pending == null) {
+            return;
+        }
+        NavigableMap<Long, Long> covered = pending.headMap(sequence, true);
+        synchronized (triggerLatencies) {
+            for (long sentNanos : covered.values()) {
+                triggerLatencies.add(now - sentNanos);
+            }
+        }
+        covered.clear();
+    }
+
+    private boolean awaitTriggers(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() < deadline) {
+            if (untriggered.values().stream().allMatch(Map::isEmpty)) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private void report(long sendingNanos, boolean settled, int discordMessages, TriggerMetrics metrics) {
+        double seconds = sendingNanos / 1e9;
+        System.out.printf(Locale.ROOT, "Deliveries:       %d sent by %d clients, %d failed, %d KB each%n",
+                deliveries, concurrency, failedDeliveries.get(), payloadSize / 1024);
+        System.out.printf(Locale.ROOT, "Throughput:       %.1f deliveries/s over %.2f s%n", deliveries / seconds, seconds);
+        System.out.printf(Locale.ROOT, "Ack latency:      %s%n", percentiles(ackLatencies));
+        System.out.printf(Locale.ROOT, "Trigger latency:  %s (%d of %d deliveries)%n",
+                percentiles(triggerLatencies), triggerLatencies.size(), deliveries - failedDeliveries.get());
+        System.out.printf(Locale.ROOT, "Restarts:         %d announced in %d Discord messages, coalescing window %d ms%n",
+                announcedRestarts.get(), discordMessages, coalesceWindowMs);
+        System.out.printf(Locale.ROOT, "Git syncs:        %d fast-forwarded, %d already up to date%n",
+                fastForwards.get(), upToDateSyncs.get());
+        if (!settled) {
+            System.out.println("Some deliveries never led to an announced restart");
+        }
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-8s %8s %10s %10s %10s%n", "Stage", "Count", "Mean (ms)", "p50 (ms)", "p99 (ms)");
+        for (TriggerMetrics.Stage stage : TriggerMetrics.Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = metrics.getHistogram(stage).snapshot();
+            if (snapshot.getCount() > 0) {
+                System.out.printf(Locale.ROOT, "%-8s %8d %10.2f %10.2f %10.2f%n", stage.name().toLowerCase(Locale.ROOT),
+                        snapshot.getCount(), snapshot.getMeanMillis(),
+                        snapshot.getQuantileMillis(0.5), snapshot.getQuantileMillis(0.99));
+            }
+        }
+    }
+
+    private static String percentiles(List<Long> latencies) {
+        long[] sorted;
+        synchronized (latencies) {
+            sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        }
+        if (sorted.length == 0) {
+            return "no samples";
+        }
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT, "p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                at(sorted, 0.5), at(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double at(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
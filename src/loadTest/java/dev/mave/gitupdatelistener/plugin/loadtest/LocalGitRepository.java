@@ -0,0 +1,95 @@
+package dev.mave.gitupdatelistener.plugin.loadtest;
+
+import dev.mave.gitupdatelistener.plugin.git.GitSync;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A bare "origin" repository with a working tree that pushes to it and a checkout that pulls from it,
+ * all in a temporary directory. The checkout is synced with the plugin's {@link GitSync}.
+ */
+final class LocalGitRepository implements AutoCloseable {
+    private final Path root;
+    private final Path author;
+    private final Path checkout;
+    private final GitSync gitSync = new GitSync();
+
+    LocalGitRepository() throws IOException, InterruptedException {
+        root = Files.createTempDirectory("git-update-listener-load");
+        Path origin = root.resolve("origin.git");
+        author = root.resolve("author");
+        checkout = root.resolve("checkout");
+
+        git(root, "init", "--bare", "--initial-branch=main", origin.toString());
+        git(root, "clone", origin.toString(), author.toString());
+        commit("Initial commit");
+        git(root, "clone", origin.toString(), checkout.toString());
+    }
+
+    /**
+     * Commit a change in the author's tree and push it to origin
+     *
+     * @return the pushed commit
+     */
+    String commit(String message) throws IOException, InterruptedException {
+        Files.writeString(author.resolve("README.md"), message + "\n", StandardCharsets.UTF_8);
+        git(author, "add", "README.md");
+        git(author, "-c", "user.name=Load Test", "-c", "user.email=load@example.com", "commit", "-q", "-m", message);
+        git(author, "push", "-q", "origin", "HEAD:main");
+        return git(author, "rev-parse", "HEAD").trim();
+    }
+
+    /**
+     * A directory for other state of the run, deleted along with the repositories
+     */
+    Path scratchDirectory(String name) throws IOException {
+        return Files.createDirectories(root.resolve(name));
+    }
+
+    /**
+     * Bring the checkout's main up to a pushed commit, the way the sync stage does in a project
+     */
+    GitSync.Result sync(String pushedHead) throws IOException {
+        return gitSync.sync(checkout, "main", pushedHead, (workTree, args) -> {
+            try {
+                return git(workTree, args.toArray(new String[0]));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted running git");
+            }
+        });
+    }
+
+    private static String git(Path directory, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(args.length + 1);
+        command.add("git");
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .start();
+        byte[] output = process.getInputStream().readAllBytes();
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IOException(String.join(" ", command) + " failed: " + new String(output, StandardCharsets.UTF_8));
+        }
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dev.mave.gitupdatelistener.plugin.loadtest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Builds push deliveries the way GitHub sends them: its headers, signed with the webhook secret, and a
+ * payload with the fields in GitHub's order, padded with commits up to the requested size.
+ */
+final class PushDeliveries {
+    private final URI endpoint;
+    private final int payloadSize;
+    private final SecretKeySpec secret;
+    private final String after;
+
+    /**
+     * @param after the commit every push moves main to
+     */
+    PushDeliveries(URI endpoint, int payloadSize, String secret, String after) {
+        this.endpoint = endpoint;
+        this.after = after;
+        this.payloadSize = payloadSize;
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    /**
+     * A delivery of a push to main in {@code repository}, whose head commit message is "load-{sequence}"
+     */
+    HttpRequest delivery(String repository, long sequence) {
+        byte[] payload = payload(repository, sequence);
+        return HttpRequest.newBuilder(endpoint)
+                .header("Accept", "*/*")
+                .header("User-Agent", "GitHub-Hookshot/e5a1e3f")
+                .header("X-GitHub-Delivery", UUID.randomUUID().toString())
+                .header("X-GitHub-Event", "push")
+                .header("X-GitHub-Hook-ID", "292430182")
+                .header("X-GitHub-Hook-Installation-Target-ID", "79929171")
+                .header("X-GitHub-Hook-Installation-Target-Type", "repository")
+                .header("Content-Type", "application/json")
+                .header("X-Hub-Signature-256", "sha256=" + HexFormat.of().formatHex(sign(payload)))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(secret);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] payload(String repository, long sequence) {
+        StringBuilder json = new StringBuilder(payloadSize + 2048);
+        json.append("{\"ref\":\"refs/heads/main\",")
+                .append("\"before\":\"6113728f27ae82c7b1a177c8d03f9e96e0adf246\",")
+                .append("\"after\":\"").append(after).append("\",")
+                .append("\"repository\":{\"id\":186853002,\"name\":\"").append(repository.substring(repository.indexOf('/') + 1))
+                .append("\",\"full_name\":\"").append(repository).append("\",\"private\":false,")
+                .append("\"owner\":{\"name\":\"load\",\"login\":\"load\",\"id\":21031067},\"default_branch\":\"main\"},")
+                .append("\"pusher\":{\"name\":\"load\",\"email\":\"load@example.com\"},")
+                .append("\"sender\":{\"login\":\"load\",\"id\":21031067,\"type\":\"User\"},")
+                .append("\"created\":false,\"deleted\":false,\"forced\":false,\"base_ref\":null,")
+                .append("\"commits\":[");
+        int commit = 0;
+        // Leave room for the head commit and the closing brackets
+        while (json.length() < payloadSize - 600 || commit == 0) {
+            if (commit > 0) json.append(',');
+            appendCommit(json, "padding-" + commit, String.format("%040x", commit));
+            commit++;
+        }
+        json.append("],\"head_commit\":");
+        // Distinct head commit IDs, so the scheduler never drops a delivery as a redelivery
+        appendCommit(json, "load-" + sequence, String.format("%040x", sequence));
+        json.append('}');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendCommit(StringBuilder json, String message, String id) {
+        json.append("{\"id\":\"").append(id).append("\",\"tree_id\":\"f9d2a07e9488b91af2641b26b9407fe22a451433\",")
+                .append("\"distinct\":true,\"message\":\"").append(message).append("\",")
+                .append("\"timestamp\":\"2024-05-07T12:34:56+02:00\",")
+                .append("\"author\":{\"name\":\"Load Test\",\"email\":\"load@example.com\",\"username\":\"load\"},")
+                .append("\"committer\":{\"name\":\"GitHub\",\"email\":\"noreply@github.com\",\"username\":\"web-flow\"},")
+                .append("\"added\":[\"src/main/java/Added.java\"],\"removed\":[],\"modified\":[\"README.md\"]}");
+    }
+}
@@ -0,0 +1,59 @@
+package dev.mave.gitupdatelistener.plugin.loadtest;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for a Discord webhook that reports every announced restart to a callback
+ */
+final class StubDiscord implements AutoCloseable {
+    /** Matches the embeds the load test's trigger stage sends */
+    private static final Pattern EMBED = Pattern.compile("\"title\":\"Restarted ([^\"]+)\",\"description\":\"load-(\\d+)\"");
+
+    interface Listener {
+        void restarted(String configName, long sequence);
+    }
+
+    private final HttpServer server;
+    private final AtomicInteger messages = new AtomicInteger();
+
+    StubDiscord(Listener listener) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/webhook", exchange -> {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            messages.incrementAndGet();
+            Matcher embed = EMBED.matcher(body);
+            while (embed.find()) {
+                listener.restarted(embed.group(1), Long.parseLong(embed.group(2)));
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    URI getUrl() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/webhook");
+    }
+
+    int getMessages() {
+        return messages.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,15 @@
+package dev.mave.gitupdatelistener.plugin;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Replays journaled pushes that arrived while this project was closed, or before the IDE last shut down
+ */
+public class JournalReplayActivity implements StartupActivity.DumbAware {
+    @Override
+    public void runActivity(@NotNull Project project) {
+        TriggerService.getInstance().replayPending(project);
+    }
+}
@@ -1,369 +1,311 @@
 package dev.mave.gitupdatelistener.plugin;
 
-import com.intellij.execution.ExecutionManager;
-import com.intellij.execution.RunManager;
-import com.intellij.execution.RunnerAndConfigurationSettings;
-import com.intellij.execution.executors.DefaultRunExecutor;
-import com.intellij.execution.process.ProcessHandler;
-import com.intellij.execution.runners.ExecutionUtil;
-import com.intellij.execution.ui.RunContentDescriptor;
-import com.intellij.execution.ui.RunContentManager;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.project.ProjectManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import dev.mave.gitupdatelistener.plugin.discord.DiscordEmbed;
+import dev.mave.gitupdatelistener.plugin.discord.DiscordNotifier;
+import dev.mave.gitupdatelistener.plugin.journal.DeliveryJournal;
+import dev.mave.gitupdatelistener.plugin.journal.JournalEntry;
+import dev.mave.gitupdatelistener.plugin.metrics.TriggerMetrics;
 import dev.mave.gitupdatelistener.plugin.model.TriggerSettings;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.*;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.io.File;
-import java.util.concurrent.atomic.AtomicBoolean;
+import dev.mave.gitupdatelistener.plugin.pipeline.CoalescingTriggerScheduler;
+import dev.mave.gitupdatelistener.plugin.pipeline.ProjectNotOpenException;
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerPipeline;
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerRun;
+import dev.mave.gitupdatelistener.plugin.relay.ListenerRelay;
+import dev.mave.gitupdatelistener.plugin.relay.RelayFollower;
+import dev.mave.gitupdatelistener.plugin.server.ListenerEndpoint;
+import dev.mave.gitupdatelistener.plugin.server.WebhookServer;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 @Service(Service.Level.APP)
-public final class TriggerService {
+public final class TriggerService implements Disposable {
     private static final Logger LOG = Logger.getInstance(TriggerService.class);
 
-    /** Background thread that accepts webhook connections */
-    private final Thread listenerThread;
-    private final AtomicBoolean isRunning = new AtomicBoolean(true);
-    private ServerSocket server;
+    private static final long JOURNAL_COMPACTION_INTERVAL_MINUTES = 60;
+    private static final String SERVER_NAME = "GitHub-Update-Listener";
+
+    private final TriggerMetrics metrics = new TriggerMetrics();
+    private final DiscordNotifier discordNotifier = new DiscordNotifier(
+            () -> TriggerSettings.getInstance().discordWebhookUrl, metrics.getHistogram(TriggerMetrics.Stage.NOTIFY));
+    private final TriggerPipeline pipeline = new TriggerPipeline(
+            () -> TriggerSettings.getInstance().buildBeforeStop, this::notifyDiscord, metrics);
+    private final CoalescingTriggerScheduler scheduler = new CoalescingTriggerScheduler(
+            AppExecutorUtil.getAppScheduledExecutorService(),
+            () -> TriggerSettings.getInstance().coalesceWindowMs,
+            this::startRun);
+    private final DeliveryJournal journal = openJournal();
+    private final ScheduledFuture<?> journalCompaction;
+    private final WebhookRequestHandler handler;
+    /** Replaced when the listener settings change, guarded by this */
+    private WebhookServer server;
+    /** Shares the server with other instances when the port is shared, guarded by this */
+    private ListenerRelay relay;
+    /** Set instead of a server while another instance holds the shared port, guarded by this */
+    private RelayFollower follower;
+    /** The server the follower tries to start once the shared port is free, guarded by this */
+    private WebhookServer takeOverCandidate;
 
     /**
      * The constructor is called automatically by IntelliJ since this class is annotated with @Service.
      */
     public TriggerService() {
-        listenerThread = new Thread(this::runServer, "GitHub-Update-Listener");
-        listenerThread.setDaemon(true);
-        listenerThread.start();
-        TriggerSettings settings = TriggerSettings.getInstance();
-        LOG.info("GitHub Update Listener service started on port " + settings.listenPort);
-    }
-
-    /**
-     * Server loop: accept GitHub webhook connections and process them
-     */
-    private void runServer() {
-        TriggerSettings settings = TriggerSettings.getInstance();
+        journalCompaction = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(this::compactJournal,
+                JOURNAL_COMPACTION_INTERVAL_MINUTES, JOURNAL_COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        handler = new WebhookRequestHandler(TriggerSettings::getInstance,
+                () -> TriggerSettings.getInstance().getWebhookSecret(), metrics, journal, scheduler::submit);
         try {
-            server = new ServerSocket(settings.listenPort, 0, InetAddress.getByName("0.0.0.0"));
-            while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
-                try (Socket client = server.accept()) {
-                    processWebhookRequest(client);
-                } catch (Exception e) {
-                    if (!isRunning.get()) break;
-                    LOG.error("Error handling incoming webhook request", e);
-                }
-            }
+            applyListenerSettings();
         } catch (Exception e) {
-            if (isRunning.get()) {
-                LOG.error("Failed to open ServerSocket on port " + settings.listenPort, e);
-            }
+            LOG.error("Failed to open ServerSocket on " + getEndpoint(TriggerSettings.getInstance()), e);
         }
     }
 
+    public static TriggerService getInstance() {
+        return ApplicationManager.getApplication().getService(TriggerService.class);
+    }
+
     /**
-     * Process an incoming webhook request
+     * Move the listener to the configured address, port and limits if they changed, without an IDE restart.
+     * The new socket is bound before the old listener stops accepting, and the old one finishes the
+     * requests it is serving in the background.
+     * <p>
+     * With a shared port that another instance already holds, this instance receives its pushes from
+     * that one instead, and takes the port over once it is free.
+     *
+     * @throws IOException if the new address can't be bound, the current listener then keeps running
      */
-    private void processWebhookRequest(Socket client) throws Exception {
+    public synchronized void applyListenerSettings() throws IOException {
         TriggerSettings settings = TriggerSettings.getInstance();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
-
-        String line;
-        String eventType = null;
-        int contentLength = 0;
-
-        while ((line = reader.readLine()) != null && !line.isEmpty()) {
-            if (line.startsWith("X-GitHub-Event:")) {
-                eventType = line.substring("X-GitHub-Event:".length()).trim();
-            } else if (line.startsWith("Content-Length:")) {
-                contentLength = Integer.parseInt(line.substring("Content-Length:".length()).trim());
+        ListenerEndpoint endpoint = getEndpoint(settings);
+        Path relaySocket = getRelaySocket(settings);
+        if (follower != null) {
+            if (follower.getSocketPath().equals(relaySocket)) {
+                // The rules may have changed
+                follower.register();
+                return;
             }
+            stopFollowing();
         }
 
-        StringBuilder payloadBuilder = new StringBuilder();
-        if (contentLength > 0) {
-            char[] buffer = new char[contentLength];
-            int bytesRead = reader.read(buffer, 0, contentLength);
-            payloadBuilder.append(buffer, 0, bytesRead);
-        }
-
-        String payload = payloadBuilder.toString();
-        LOG.info("Received GitHub webhook event: " + eventType);
-
-        OutputStream output = client.getOutputStream();
-        String response = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK";
-        output.write(response.getBytes(StandardCharsets.UTF_8));
-        output.flush();
-
-        if ("push".equals(eventType) && payload.contains("\"ref\":\"refs/heads/" + settings.targetBranch + "\"")) {
-            LOG.info("Detected update to target branch '" + settings.targetBranch + "'. Scheduling configuration rerun...");
-
-            String commitMessage = extractCommitMessage(payload);
-            String authorName = extractAuthorName(payload);
-            String repoName = extractRepoName(payload);
-
-            ApplicationManager.getApplication().invokeLater(() -> {
-                rerunTargetConfig();
-
-                if (settings.discordWebhookUrl != null && !settings.discordWebhookUrl.isEmpty()) {
-                    String title = "🔄 Run Configuration Triggered: " + settings.targetConfigName;
-                    String description = String.format("Branch `%s` in repo `%s` was updated.\n%s",
-                            settings.targetBranch, repoName, commitMessage);
-                    sendDiscordNotification(title, description, authorName);
+        WebhookServer current = server;
+        if (current == null || !current.isRunning() || !current.getEndpoint().equals(endpoint)
+                || current.getMaxConnections() != settings.maxConnections) {
+            WebhookServer replacement = new WebhookServer(SERVER_NAME, endpoint, settings.maxConnections, handler);
+            try {
+                replacement.startReplacing(current);
+            } catch (BindException e) {
+                // Only another instance relaying the port is worth following, not anything else that holds it
+                if (relaySocket == null || !ListenerRelay.isAccepting(relaySocket)) {
+                    throw e;
                 }
-            });
+                stopListening();
+                follow(relaySocket, replacement);
+                return;
+            }
+            server = replacement;
+            LOG.info("GitHub Update Listener service listening on " + endpoint);
         }
+        updateRelay(relaySocket);
+    }
+
+    private static ListenerEndpoint getEndpoint(TriggerSettings settings) {
+        return new ListenerEndpoint(settings.bindAddress, settings.listenPort, settings.listenBacklog, settings.reuseAddress);
     }
 
     /**
-     * Extract the commit message from the webhook payload
+     * Where instances sharing the configured port meet, or null if it isn't shared
      */
-    private String extractCommitMessage(String payload) {
-        try {
-            int headCommitIndex = payload.indexOf("\"head_commit\":");
-            if (headCommitIndex >= 0) {
-                int messageStart = payload.indexOf("\"message\":\"", headCommitIndex) + 11;
-                int messageEnd = payload.indexOf("\"", messageStart);
-                return payload.substring(messageStart, messageEnd);
-            }
-        } catch (Exception e) {
-            LOG.warn("Could not extract commit message", e);
-        }
-        return "No commit message available";
+    @Nullable
+    private static Path getRelaySocket(TriggerSettings settings) {
+        // An ephemeral port is never the same for two instances
+        return settings.shareListener && settings.listenPort != 0 ? ListenerRelay.getSocketPath(settings.listenPort) : null;
     }
 
     /**
-     * Extract the author name from the webhook payload
+     * Relay pushes through the given socket, or stop relaying with null
      */
-    private String extractAuthorName(String payload) {
-        try {
-            int headCommitIndex = payload.indexOf("\"head_commit\":");
-            if (headCommitIndex >= 0) {
-                int authorIndex = payload.indexOf("\"author\":", headCommitIndex);
-                int nameStart = payload.indexOf("\"name\":\"", authorIndex) + 8;
-                int nameEnd = payload.indexOf("\"", nameStart);
-                return payload.substring(nameStart, nameEnd);
+    private void updateRelay(@Nullable Path relaySocket) {
+        if (relay != null && !relay.getSocketPath().equals(relaySocket)) {
+            handler.setRelay(null);
+            relay.close();
+            relay = null;
+        }
+        if (relay == null && relaySocket != null) {
+            try {
+                relay = ListenerRelay.open(SERVER_NAME + "-Relay", relaySocket);
+                handler.setRelay(relay);
+            } catch (IOException e) {
+                LOG.warn("Failed to share the listener through " + relaySocket + ", other instances can't receive pushes", e);
             }
-        } catch (Exception e) {
-            LOG.warn("Could not extract author name", e);
         }
-        return "Unknown";
+    }
+
+    private void stopListening() {
+        updateRelay(null);
+        if (server != null) {
+            server.close();
+            server = null;
+        }
     }
 
     /**
-     * Extract the repository name from the webhook payload
+     * @param candidate the unstarted server to take the port over with once its owner is gone
      */
-    private String extractRepoName(String payload) {
-        try {
-            int repoIndex = payload.indexOf("\"repository\":");
-            if (repoIndex >= 0) {
-                int nameStart = payload.indexOf("\"name\":\"", repoIndex) + 8;
-                int nameEnd = payload.indexOf("\"", nameStart);
-                return payload.substring(nameStart, nameEnd);
-            }
-        } catch (Exception e) {
-            LOG.warn("Could not extract repository name", e);
-        }
-        return "Unknown";
+    private void follow(Path relaySocket, WebhookServer candidate) {
+        LOG.info("Another instance listens on port " + TriggerSettings.getInstance().listenPort
+                + ", receiving its pushes through " + relaySocket);
+        follower = new RelayFollower(SERVER_NAME + "-Follower", relaySocket,
+                () -> TriggerSettings.getInstance().getEffectiveRules(), handler::handleForwardedPush, this::takeOver);
+        takeOverCandidate = candidate;
+        follower.start();
+    }
+
+    private void stopFollowing() {
+        follower.close();
+        follower = null;
+        takeOverCandidate = null;
     }
 
     /**
-     * Sends a Discord notification with the commit details to the specified webhook URL.
+     * Called by the follower before it connects: bind the shared port if its owner is gone
+     *
+     * @return true if this instance now listens itself, or the follower was replaced and should stop
      */
-    private void sendDiscordNotification(String title, String description, String commitAuthor) {
+    private synchronized boolean takeOver(RelayFollower candidate) {
+        if (follower != candidate) {
+            return true;
+        }
         TriggerSettings settings = TriggerSettings.getInstance();
-        if (settings.discordWebhookUrl == null || settings.discordWebhookUrl.isEmpty()) {
-            return;
+        ListenerEndpoint endpoint = getEndpoint(settings);
+        // Retried for as long as the owner lives, so the same unstarted server is offered the port every time
+        if (!takeOverCandidate.getEndpoint().equals(endpoint) || takeOverCandidate.getMaxConnections() != settings.maxConnections) {
+            takeOverCandidate = new WebhookServer(SERVER_NAME, endpoint, settings.maxConnections, handler);
         }
-
         try {
-            URL url = new URL(settings.discordWebhookUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setDoOutput(true);
-
-            String jsonPayload = String.format(
-                    "{\"embeds\":[{" +
-                            "\"title\":\"%s\"," +
-                            "\"description\":\"%s\"," +
-                            "\"color\":5814783," +
-                            "\"footer\":{\"text\":\"Commit by: %s\"}," +
-                            "\"timestamp\":\"%s\"" +
-                            "}]}",
-                    escapeJson(title),
-                    escapeJson(description),
-                    escapeJson(commitAuthor),
-                    java.time.Instant.now().toString()
-            );
-
-            try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = jsonPayload.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
-
-            int responseCode = connection.getResponseCode();
-            if (responseCode < 200 || responseCode >= 300) {
-                LOG.warn("Discord notification failed with code: " + responseCode);
-            }
-        } catch (Exception e) {
-            LOG.error("Error sending Discord notification", e);
+            takeOverCandidate.start();
+        } catch (IOException e) {
+            return false;
         }
+        follower = null;
+        server = takeOverCandidate;
+        takeOverCandidate = null;
+        LOG.info("Took over the shared GitHub Update Listener on " + endpoint);
+        updateRelay(getRelaySocket(settings));
+        return true;
     }
 
-    private String escapeJson(String text) {
-        if (text == null) return "";
-        return text.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    /**
+     * Latencies and counters of everything the listener has handled since it started
+     */
+    public TriggerMetrics getMetrics() {
+        return metrics;
     }
 
-    private void rerunTargetConfig() {
-        TriggerSettings settings = TriggerSettings.getInstance();
-        Project[] openProjects = ProjectManager.getInstance().getOpenProjects();
-        if (openProjects.length == 0) {
-            LOG.error("No open projects found. Aborting rerun.");
-            return;
+    /**
+     * Run the journaled pushes that were waiting for a project, now that it has opened
+     */
+    public void replayPending(Project project) {
+        for (JournalEntry entry : journal.takeReplayable(project.getName())) {
+            LOG.info("Replaying delivery " + entry.getDeliveryId() + " of commit " + entry.getEvent().getHeadCommitId()
+                    + " for " + entry.getKey());
+            scheduler.submit(new TriggerRun(entry.getEvent(), entry.getProjectName(), entry.getConfigName(), entry.getSequence()));
         }
+    }
 
-        Project project = openProjects[0];
-        if (project.isDisposed()) {
-            LOG.error("Selected project is disposed. Aborting rerun.");
-            return;
+    private static DeliveryJournal openJournal() {
+        Path directory = Path.of(PathManager.getSystemPath(), "git-update-listener", "journal");
+        try {
+            return DeliveryJournal.open(directory, DeliveryJournal.DEFAULT_DEDUP_CAPACITY);
+        } catch (IOException e) {
+            LOG.error("Failed to open the delivery journal in " + directory + ", pushes won't survive a restart", e);
+            return DeliveryJournal.inMemory(DeliveryJournal.DEFAULT_DEDUP_CAPACITY);
         }
+    }
 
-        // Pull Git changes first
-        ApplicationManager.getApplication().invokeLater(() -> {
-            String projectPath = project.getBasePath();
-            if (projectPath == null) {
-                LOG.error("Project base path is null. Skipping Git pull.");
-                runTargetConfig(project, settings);
+    /**
+     * Start a run and settle its journal entry once it ends
+     */
+    private CompletableFuture<Void> startRun(TriggerRun run) {
+        if (run.isPullOnly()) {
+            // Not journaled, and pulling alone must not settle the restarts journaled for the same configuration
+            return pipeline.start(run);
+        }
+        // The run pulls after this, so it covers every push journaled so far, even ones that reached the scheduler later
+        long covered = Math.max(run.getJournalSequence(), journal.getLastSequence());
+        return pipeline.start(run).whenComplete((v, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CancellationException) {
+                // Superseded by a newer push, whose run settles this entry too, or the IDE is shutting down
                 return;
             }
-
-            try {
-                LOG.info("Pulling Git changes for project: " + project.getName());
-
-                // Create process to get current branch
-                ProcessBuilder checkBranchBuilder = new ProcessBuilder("git", "rev-parse", "--abbrev-ref", "HEAD");
-                checkBranchBuilder.directory(new File(projectPath));
-                Process branchProcess = checkBranchBuilder.start();
-
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(branchProcess.getInputStream()))) {
-                    String currentBranch = reader.readLine();
-                    int exitCode = branchProcess.waitFor();
-
-                    if (exitCode != 0) {
-                        LOG.error("Failed to get current branch, exit code: " + exitCode);
-                        runTargetConfig(project, settings);
-                        return;
-                    }
-
-                    LOG.info("Current branch: " + currentBranch);
-
-                    // Only pull if we're on the target branch
-                    if (settings.targetBranch.equals(currentBranch)) {
-                        // Run git pull
-                        ProcessBuilder pullBuilder = new ProcessBuilder("git", "pull");
-                        pullBuilder.directory(new File(projectPath));
-                        pullBuilder.redirectErrorStream(true);
-                        Process pullProcess = pullBuilder.start();
-
-                        // Log the output from git pull
-                        StringBuilder output = new StringBuilder();
-                        try (BufferedReader pullReader = new BufferedReader(new InputStreamReader(pullProcess.getInputStream()))) {
-                            String line;
-                            while ((line = pullReader.readLine()) != null) {
-                                output.append(line).append("\n");
-                            }
-                        }
-
-                        int pullExitCode = pullProcess.waitFor();
-                        LOG.info("Git pull completed with exit code: " + pullExitCode);
-                        LOG.info("Git pull output: " + output.toString().trim());
-                    } else {
-                        LOG.info("Skipping Git pull - current branch '" + currentBranch +
-                                "' is not the target branch '" + settings.targetBranch + "'");
-                    }
-                }
-            } catch (Exception e) {
-                LOG.error("Error pulling Git changes", e);
+            if (cause instanceof ProjectNotOpenException) {
+                journal.awaitProject(run.getKey(), covered);
+            } else {
+                journal.complete(run.getKey(), covered, run.getEvent().getHeadCommitId());
             }
-
-            // Continue with rerunning the target configuration
-            runTargetConfig(project, settings);
         });
     }
 
-    private void runTargetConfig(Project project, TriggerSettings settings) {
-        RunManager runManager = RunManager.getInstance(project);
-
-        List<RunnerAndConfigurationSettings> allSettings = runManager.getAllSettings();
-        RunnerAndConfigurationSettings targetSettings = null;
-        for (RunnerAndConfigurationSettings configSettings : allSettings) {
-            if (settings.targetConfigName.equals(configSettings.getName())) {
-                targetSettings = configSettings;
-                break;
-            }
+    private void compactJournal() {
+        try {
+            journal.compact();
+        } catch (IOException e) {
+            LOG.warn("Failed to compact the delivery journal", e);
         }
+    }
 
-        if (targetSettings == null) {
-            LOG.error("Run Configuration '" + settings.targetConfigName + "' not found in project: " + project.getName());
+    /**
+     * Queue a Discord announcement of a finished rerun, if a webhook is configured
+     */
+    private void notifyDiscord(TriggerRun run) {
+        TriggerSettings settings = TriggerSettings.getInstance();
+        if (settings.discordWebhookUrl == null || settings.discordWebhookUrl.isEmpty()) {
             return;
         }
 
-        final RunnerAndConfigurationSettings finalTargetSettings = targetSettings;
-
-        ExecutionManager executionManager = ExecutionManager.getInstance(project);
-        ProcessHandler[] runningProcesses = executionManager.getRunningProcesses();
-
-        for (ProcessHandler process : runningProcesses) {
-
-            List<RunContentDescriptor> descriptors = RunContentManager.getInstance(project).getAllDescriptors();
-
-            RunContentDescriptor descriptor = descriptors.stream()
-                    .filter(d -> d.getProcessHandler() == process)
-                    .findFirst()
-                    .orElse(null);
-
-            if (descriptor != null &&
-                    descriptor.getDisplayName() != null &&
-                    descriptor.getDisplayName().contains(settings.targetConfigName)) {
-                LOG.info("Terminating existing process for: " + settings.targetConfigName);
-                process.destroyProcess();
-                try {
-                    process.waitFor(3000);
-                } catch (Exception e) {
-                    LOG.warn("Error waiting for process termination", e);
-                }
-            }
-        }
+        PushEvent event = run.getEvent();
+        String commitMessage = Objects.requireNonNullElse(event.getHeadCommitMessage(), "No commit message available");
+        String authorName = Objects.requireNonNullElse(event.getHeadCommitAuthorName(), "Unknown");
+        String repoName = Objects.requireNonNullElse(event.getRepositoryFullName(), "Unknown");
 
-        ExecutionUtil.runConfiguration(finalTargetSettings, DefaultRunExecutor.getRunExecutorInstance());
-        LOG.info("Rerun triggered for configuration: " + settings.targetConfigName);
+        String title = "🔄 Run Configuration Triggered: " + run.getTargetConfigName();
+        String description = String.format("Branch `%s` in repo `%s` was updated.\n%s",
+                run.getTargetBranch(), repoName, commitMessage);
+        discordNotifier.enqueue(new DiscordEmbed(title, description, "Commit by: " + authorName, Instant.now()));
     }
 
     /**
      * Clean up resources when the plugin is unloaded
      */
+    @Override
     public void dispose() {
-        isRunning.set(false);
-        if (server != null) {
-            try {
-                server.close();
-            } catch (Exception e) {
-                LOG.error("Error closing server socket", e);
+        synchronized (this) {
+            if (follower != null) {
+                stopFollowing();
             }
+            stopListening();
         }
-        if (listenerThread != null && listenerThread.isAlive()) {
-            listenerThread.interrupt();
-        }
+        scheduler.cancelAll();
+        journalCompaction.cancel(false);
+        journal.close();
+        discordNotifier.close();
     }
 }
\ No newline at end of file
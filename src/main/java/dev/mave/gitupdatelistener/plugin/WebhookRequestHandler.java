@@ -0,0 +1,406 @@
+package dev.mave.gitupdatelistener.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import dev.mave.gitupdatelistener.plugin.journal.DeliveryJournal;
+import dev.mave.gitupdatelistener.plugin.metrics.TriggerMetrics;
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import dev.mave.gitupdatelistener.plugin.model.TriggerSettings;
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerKey;
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerRun;
+import dev.mave.gitupdatelistener.plugin.relay.ListenerRelay;
+import dev.mave.gitupdatelistener.plugin.server.BufferPool;
+import dev.mave.gitupdatelistener.plugin.server.DeadlineInputStream;
+import dev.mave.gitupdatelistener.plugin.server.HttpParseException;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequest;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequestParser;
+import dev.mave.gitupdatelistener.plugin.server.HttpResponse;
+import dev.mave.gitupdatelistener.plugin.server.RateLimiter;
+import dev.mave.gitupdatelistener.plugin.server.WebhookServer;
+import dev.mave.gitupdatelistener.plugin.webhook.PathFilter;
+import dev.mave.gitupdatelistener.plugin.webhook.PayloadParseException;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import dev.mave.gitupdatelistener.plugin.webhook.PushField;
+import dev.mave.gitupdatelistener.plugin.webhook.PushPayloadParser;
+import dev.mave.gitupdatelistener.plugin.webhook.RuleIndex;
+import dev.mave.gitupdatelistener.plugin.webhook.WebhookSignature;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Serves webhook connections: reads each request, answers it, and hands matched pushes on as {@link TriggerRun}s.
+ * <p>
+ * This is everything between the socket and the trigger scheduler. It takes its settings and its
+ * consumer from the caller and touches nothing else of the IDE, so it also runs headless.
+ * <p>
+ * With a webhook secret set, every delivery must carry a valid {@code X-Hub-Signature-256}. The HMAC is
+ * computed while the body streams in, and a delivery that fails the check is answered with 401 before
+ * its payload is parsed.
+ * <p>
+ * Prometheus metrics are served on {@code GET /metrics} to clients on the same host only. From any other
+ * address, a request for them is handled, and authenticated, like any other delivery.
+ * <p>
+ * Each address may send a limited number of requests per minute. The first request of a connection is
+ * checked while the server admits it, later ones on a kept-alive connection as they arrive. Requests
+ * whose headers or body trickle in too slowly are answered with 408.
+ * <p>
+ * A push is only acknowledged once every run it triggers is synced to the {@link DeliveryJournal}, and a
+ * redelivery of a delivery ID the journal already holds, or that is still being handled, is acknowledged
+ * without triggering anything.
+ * <p>
+ * A rule with path globs only restarts for pushes that changed a path it lets through. Other pushes are
+ * ignored, or pulled without a restart, and neither is journaled. When the payload doesn't list every
+ * changed path, the run restarts unless {@code git diff} shows otherwise once it has pulled.
+ * <p>
+ * When other IDE instances share the listener through a {@link ListenerRelay}, every push is forwarded
+ * to those with a matching rule once it is parsed. On those instances, forwarded pushes arrive through
+ * {@link #handleForwardedPush}.
+ */
+public final class WebhookRequestHandler implements WebhookServer.ConnectionHandler {
+    private static final Logger LOG = Logger.getInstance(WebhookRequestHandler.class);
+
+    /** How long an idle keep-alive connection stays open waiting for the next request */
+    private static final int KEEP_ALIVE_TIMEOUT_MS = 15_000;
+    /** The payload fields a push needs to be matched, announced and synced to */
+    private static final Set<PushField> PUSH_FIELDS = EnumSet.of(PushField.REF, PushField.REPOSITORY_FULL_NAME,
+            PushField.HEAD_COMMIT_ID, PushField.HEAD_COMMIT_MESSAGE, PushField.HEAD_COMMIT_AUTHOR_NAME, PushField.COMPARE);
+    /** The payload fields needed once a rule, here or on an instance the push is forwarded to, filters by changed paths */
+    private static final Set<PushField> FILTERED_PUSH_FIELDS = EnumSet.of(PushField.REF, PushField.REPOSITORY_FULL_NAME,
+            PushField.HEAD_COMMIT_ID, PushField.HEAD_COMMIT_MESSAGE, PushField.HEAD_COMMIT_AUTHOR_NAME,
+            PushField.CHANGED_PATHS, PushField.COMPARE);
+
+    /** Idle body buffers kept for reuse, 4 MB worth at the default chunk size */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final String METRICS_PATH = "/metrics";
+    private static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Supplier<TriggerSettings> settings;
+    private final Supplier<String> webhookSecret;
+    private final TriggerMetrics metrics;
+    private final DeliveryJournal journal;
+    private final Consumer<TriggerRun> triggers;
+    private volatile BufferPool bufferPool;
+    private volatile RuleIndex ruleIndex;
+    private volatile WebhookSignature signature;
+    private volatile ListenerRelay relay;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * @param settings      read for every connection, so setting changes apply to the next one
+     * @param webhookSecret read for every connection, an empty secret accepts unsigned deliveries
+     * @param journal       records every accepted push before it is acknowledged
+     * @param triggers      receives a run for every rule a push matches
+     */
+    public WebhookRequestHandler(@NotNull Supplier<TriggerSettings> settings, @NotNull Supplier<String> webhookSecret,
+                                 @NotNull TriggerMetrics metrics, @NotNull DeliveryJournal journal,
+                                 @NotNull Consumer<TriggerRun> triggers) {
+        this.settings = settings;
+        this.webhookSecret = webhookSecret;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.triggers = triggers;
+        this.bufferPool = new BufferPool(BufferPool.DEFAULT_CHUNK_SIZE, settings.get().directBodyBuffers, MAX_POOLED_BUFFERS);
+        this.rateLimiter = new RateLimiter(settings.get().rateLimitPerMinute);
+    }
+
+    /**
+     * Forward every push to the other instances sharing this listener, or stop with null
+     */
+    public void setRelay(@Nullable ListenerRelay relay) {
+        this.relay = relay;
+    }
+
+    /**
+     * Check the address's rate limit on the accepting thread, without touching the settings.
+     * A changed limit takes effect from the next connection that is served.
+     */
+    @Override
+    public long admit(InetAddress address) {
+        return rateLimiter.acquire(address);
+    }
+
+    @Override
+    public void rejected(int statusCode) {
+        metrics.deliveryReceived();
+        metrics.deliveryRejected(statusCode);
+    }
+
+    /**
+     * Serve every request the client sends on this connection, keeping it open while the client asks to
+     */
+    @Override
+    public void handle(Socket client, long acceptedNanos) throws Exception {
+        metrics.record(TriggerMetrics.Stage.ACCEPT, System.nanoTime() - acceptedNanos);
+        TriggerSettings settings = this.settings.get();
+        rateLimiter.setRequestsPerMinute(settings.rateLimitPerMinute);
+        OutputStream output = client.getOutputStream();
+        HttpRequestParser parser = new HttpRequestParser(new DeadlineInputStream(client, KEEP_ALIVE_TIMEOUT_MS), output,
+                getBufferPool(settings), settings.getMaxHeaderSizeBytes(), settings.getMaxBodySizeBytes());
+        parser.setTimeouts(settings.headerTimeoutSeconds * 1000, settings.bodyTimeoutSeconds * 1000);
+        WebhookSignature signature = getSignature(webhookSecret.get());
+        if (signature != null) {
+            parser.setBodyMac(signature.getMac());
+        }
+
+        // The first request was counted when the connection was admitted
+        boolean firstRequest = true;
+        while (true) {
+            HttpRequest request;
+            try {
+                request = parser.readRequest();
+            } catch (HttpParseException e) {
+                LOG.warn("Rejected malformed webhook request: " + e.getMessage());
+                metrics.deliveryReceived();
+                metrics.deliveryRejected(e.getStatusCode());
+                HttpResponse.write(output, e.getStatusCode(), e.getMessage(), false);
+                return;
+            } catch (SocketTimeoutException e) {
+                // Idle keep-alive connection, let the client reconnect when it has something to send
+                return;
+            }
+            if (request == null) {
+                return;
+            }
+            metrics.record(TriggerMetrics.Stage.READ, System.nanoTime() - request.getStartNanos());
+
+            boolean keepAlive = request.isKeepAlive();
+            try (request) {
+                long retryAfter = firstRequest ? 0 : rateLimiter.acquire(client.getInetAddress());
+                firstRequest = false;
+                if (retryAfter > 0) {
+                    rejected(429);
+                    output.write(HttpResponse.rejection(429, retryAfter));
+                    output.flush();
+                    return;
+                }
+                if (METRICS_PATH.equals(request.getPath()) && client.getInetAddress().isLoopbackAddress()) {
+                    serveMetrics(request, output, keepAlive);
+                } else {
+                    metrics.deliveryReceived();
+                    if (signature != null && !WebhookSignature.matches(request.getHeader(WebhookSignature.HEADER), request.getBodyMac())) {
+                        LOG.warn("Rejected webhook delivery without a valid " + WebhookSignature.HEADER);
+                        metrics.deliveryRejected(401);
+                        HttpResponse.write(output, 401, "Invalid signature", false);
+                        return;
+                    }
+                    boolean duplicate = handleWebhookEvent(request, settings);
+                    HttpResponse.write(output, 200, duplicate ? "Duplicate delivery ignored" : "OK", keepAlive);
+                }
+            } catch (PayloadParseException e) {
+                LOG.warn("Rejected malformed webhook payload: " + e.getMessage());
+                metrics.deliveryRejected(400);
+                HttpResponse.write(output, 400, e.getMessage(), keepAlive);
+            } catch (UncheckedIOException e) {
+                // Unacknowledged, so GitHub reports the delivery as failed and it can be redelivered
+                LOG.warn("Failed to record webhook delivery in the journal", e.getCause());
+                metrics.deliveryRejected(503);
+                HttpResponse.write(output, 503, "Delivery could not be recorded", false);
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Error handling webhook delivery", e);
+                metrics.deliveryFailed();
+                HttpResponse.write(output, 500, "Internal Server Error", false);
+                return;
+            }
+            if (!keepAlive) {
+                return;
+            }
+        }
+    }
+
+    private void serveMetrics(HttpRequest request, OutputStream output, boolean keepAlive) throws IOException {
+        if (!"GET".equals(request.getMethod())) {
+            HttpResponse.write(output, 405, "Method Not Allowed", keepAlive);
+            return;
+        }
+        HttpResponse.write(output, 200, METRICS_CONTENT_TYPE, metrics.toPrometheusText(), keepAlive);
+    }
+
+    /**
+     * The shared body buffer pool, replaced when the direct buffer setting changes
+     */
+    private BufferPool getBufferPool(TriggerSettings settings) {
+        BufferPool pool = bufferPool;
+        if (pool.isDirect() != settings.directBodyBuffers) {
+            pool = new BufferPool(BufferPool.DEFAULT_CHUNK_SIZE, settings.directBodyBuffers, MAX_POOLED_BUFFERS);
+            bufferPool = pool;
+        }
+        return pool;
+    }
+
+    /**
+     * Process an incoming webhook request
+     *
+     * @return whether it was a redelivery that was ignored
+     * @throws UncheckedIOException if the triggered runs couldn't be journaled
+     */
+    private boolean handleWebhookEvent(HttpRequest request, TriggerSettings settings) throws PayloadParseException {
+        String eventType = request.getHeader("X-GitHub-Event");
+        LOG.info("Received GitHub webhook event: " + eventType);
+        if (!"push".equals(eventType)) {
+            return false;
+        }
+        // Checked before the body is parsed, GitHub redelivers the same payload under the same ID.
+        // Followers keep their own journals, so they are still sent what this instance has seen.
+        String deliveryId = Objects.requireNonNullElse(request.getHeader("X-GitHub-Delivery"), "");
+        boolean duplicate = !journal.tryReserve(deliveryId);
+        ListenerRelay relay = this.relay;
+        boolean forward = relay != null && relay.hasFollowers();
+        if (duplicate && !forward) {
+            LOG.info("Ignoring redelivery of webhook delivery " + deliveryId);
+            return true;
+        }
+
+        try {
+            RuleIndex index = getRuleIndex(settings);
+            long parseStartNanos = System.nanoTime();
+            boolean needsChangedPaths = index.hasPathFilters() || forward && relay.needsChangedPaths();
+            PushEvent event = new PushPayloadParser().parse(request.getBody().chunks(),
+                    needsChangedPaths ? FILTERED_PUSH_FIELDS : PUSH_FIELDS);
+            metrics.record(TriggerMetrics.Stage.PARSE, System.nanoTime() - parseStartNanos);
+            if (forward) {
+                relay.forward(deliveryId, event);
+            }
+            if (duplicate) {
+                LOG.info("Ignoring redelivery of webhook delivery " + deliveryId);
+                return true;
+            }
+            dispatch(deliveryId, event, index);
+            return false;
+        } finally {
+            if (!duplicate) {
+                // A failed delivery can be redelivered, unless some of its runs were journaled
+                journal.release(deliveryId);
+            }
+        }
+    }
+
+    /**
+     * Handle a push another instance received and forwarded, as if GitHub had delivered it here
+     */
+    public void handleForwardedPush(@NotNull String deliveryId, @NotNull PushEvent event) {
+        metrics.deliveryReceived();
+        if (!journal.tryReserve(deliveryId)) {
+            LOG.info("Ignoring forwarded redelivery of webhook delivery " + deliveryId);
+            return;
+        }
+        try {
+            dispatch(deliveryId, event, getRuleIndex(settings.get()));
+        } catch (UncheckedIOException e) {
+            // Already acknowledged by the owner, so this instance misses the push
+            LOG.warn("Failed to record forwarded delivery " + deliveryId + " in the journal", e.getCause());
+            metrics.deliveryFailed();
+        } finally {
+            journal.release(deliveryId);
+        }
+    }
+
+    /**
+     * Decide which rules a push restarts or pulls, journal the restarts and hand the runs on
+     *
+     * @throws UncheckedIOException if the triggered runs couldn't be journaled
+     */
+    private void dispatch(String deliveryId, PushEvent event, RuleIndex index) {
+        if (event.isDeletion()) {
+            // Nothing to pull, and it mustn't supersede a run for a push that still is
+            LOG.info("Push deleted '" + event.getRef() + "', nothing to pull or restart");
+            return;
+        }
+        long matchStartNanos = System.nanoTime();
+        List<TriggerRule> matches = index.match(event.getRepositoryFullName(), event.getRef());
+        List<TriggerRule> restarts = new ArrayList<>(matches.size());
+        List<PathFilter> deferredFilters = new ArrayList<>(matches.size());
+        List<TriggerRule> pullsOnly = new ArrayList<>(0);
+        for (TriggerRule rule : matches) {
+            PathFilter pathFilter = index.getPathFilter(rule);
+            if (pathFilter == null || !event.hasAllChangedPaths()) {
+                restarts.add(rule);
+                deferredFilters.add(pathFilter);
+            } else if (pathFilter.matchesAny(event.getChangedPaths())) {
+                restarts.add(rule);
+                deferredFilters.add(null);
+            } else if (rule.pullFilteredPushes) {
+                pullsOnly.add(rule);
+            } else {
+                LOG.info("Push to '" + event.getRef() + "' changed no path rule " + rule + " cares about, ignoring it");
+            }
+        }
+        metrics.record(TriggerMetrics.Stage.MATCH, System.nanoTime() - matchStartNanos);
+        if (restarts.isEmpty() && pullsOnly.isEmpty()) {
+            return;
+        }
+
+        List<TriggerRun> runs = new ArrayList<>(restarts.size());
+        try {
+            for (int i = 0; i < restarts.size(); i++) {
+                TriggerRule rule = restarts.get(i);
+                String projectName = getProjectName(rule);
+                long sequence = journal.append(deliveryId, new TriggerKey(projectName, rule.configName), event);
+                runs.add(new TriggerRun(event, projectName, rule.configName, sequence, false, deferredFilters.get(i)));
+            }
+            journal.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int i = 0; i < runs.size(); i++) {
+            LOG.info("Push to '" + event.getRef() + "' matched rule " + restarts.get(i) + ". Scheduling configuration rerun...");
+            triggers.accept(runs.get(i));
+        }
+        for (TriggerRule rule : pullsOnly) {
+            LOG.info("Push to '" + event.getRef() + "' changed no path rule " + rule + " cares about. Scheduling a pull...");
+            triggers.accept(new TriggerRun(event, getProjectName(rule), rule.configName, -1, true, null));
+        }
+    }
+
+    @Nullable
+    private static String getProjectName(TriggerRule rule) {
+        return rule.projectName == null || rule.projectName.isEmpty() ? null : rule.projectName;
+    }
+
+    /**
+     * The signature check for the configured secret, or null if deliveries aren't signed
+     */
+    @Nullable
+    private WebhookSignature getSignature(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            return null;
+        }
+        WebhookSignature current = signature;
+        if (current == null || !current.getSecret().equals(secret)) {
+            current = new WebhookSignature(secret);
+            signature = current;
+        }
+        return current;
+    }
+
+    /**
+     * The compiled rule index, rebuilt whenever the configured rules change
+     */
+    private RuleIndex getRuleIndex(TriggerSettings settings) {
+        List<TriggerRule> rules = settings.getEffectiveRules();
+        RuleIndex index = ruleIndex;
+        if (index == null || !index.getRules().equals(rules)) {
+            List<TriggerRule> snapshot = new ArrayList<>(rules.size());
+            for (TriggerRule rule : rules) {
+                snapshot.add(rule.copy());
+            }
+            index = new RuleIndex(snapshot);
+            ruleIndex = index;
+        }
+        return index;
+    }
+}
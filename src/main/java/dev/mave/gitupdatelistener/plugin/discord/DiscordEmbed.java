@@ -0,0 +1,80 @@
+package dev.mave.gitupdatelistener.plugin.discord;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Instant;
+
+/**
+ * One Discord embed, as queued on the {@link DiscordNotifier}
+ */
+public final class DiscordEmbed {
+    /** Discord's limits on embed fields, longer text is rejected with a 400 */
+    private static final int MAX_TITLE_LENGTH = 256;
+    private static final int MAX_DESCRIPTION_LENGTH = 4096;
+    private static final int MAX_FOOTER_LENGTH = 2048;
+    /** Discord's limit on the text of all embeds in one message together */
+    static final int MAX_TOTAL_LENGTH = 6000;
+    private static final int COLOR = 5814783;
+
+    private final String title;
+    private final String description;
+    private final String footer;
+    private final Instant timestamp;
+
+    public DiscordEmbed(@NotNull String title, @NotNull String description, @NotNull String footer, @NotNull Instant timestamp) {
+        this.title = truncate(title, MAX_TITLE_LENGTH);
+        this.footer = truncate(footer, MAX_FOOTER_LENGTH);
+        // The field limits alone add up to more than a message may hold, so the description gives way
+        this.description = truncate(description,
+                Math.min(MAX_DESCRIPTION_LENGTH, MAX_TOTAL_LENGTH - this.title.length() - this.footer.length()));
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * The characters Discord counts towards {@link #MAX_TOTAL_LENGTH}
+     */
+    int length() {
+        return title.length() + description.length() + footer.length();
+    }
+
+    /**
+     * Append this embed as a JSON object
+     */
+    void appendJson(StringBuilder json) {
+        json.append("{\"title\":\"");
+        escapeJson(json, title);
+        json.append("\",\"description\":\"");
+        escapeJson(json, description);
+        json.append("\",\"color\":").append(COLOR);
+        json.append(",\"footer\":{\"text\":\"");
+        escapeJson(json, footer);
+        json.append("\"},\"timestamp\":\"").append(timestamp).append("\"}");
+    }
+
+    private static void escapeJson(StringBuilder json, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+    }
+
+    private static String truncate(String text, int maxLength) {
+        if (text.length() <= maxLength) return text;
+        int end = maxLength - 1;
+        // Don't split a surrogate pair
+        if (Character.isHighSurrogate(text.charAt(end - 1))) end--;
+        return text.substring(0, end) + "…";
+    }
+}
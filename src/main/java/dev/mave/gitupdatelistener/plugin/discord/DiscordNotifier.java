@@ -0,0 +1,223 @@
+package dev.mave.gitupdatelistener.plugin.discord;
+
+import com.intellij.openapi.diagnostic.Logger;
+import dev.mave.gitupdatelistener.plugin.metrics.LatencyHistogram;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Posts embeds to a Discord webhook from a background worker.
+ * <p>
+ * Callers only enqueue, so a slow or rate-limited Discord never blocks a restart. The worker
+ * batches whatever has queued up into messages of up to ten embeds and 6000 characters, reuses a
+ * single {@link HttpClient}, and honours {@code Retry-After} on 429 responses. If Discord still
+ * rejects a batch with 400, its embeds are sent one by one so only the offending one is lost.
+ */
+public final class DiscordNotifier implements AutoCloseable {
+    private static final Logger LOG = Logger.getInstance(DiscordNotifier.class);
+
+    /** Discord accepts at most ten embeds per message */
+    static final int MAX_EMBEDS_PER_MESSAGE = 10;
+    private static final int QUEUE_CAPACITY = 100;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final long DEFAULT_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    private final Supplier<String> webhookUrl;
+    private final LatencyHistogram sendLatency;
+    private final long retryDelayMs;
+    private final HttpClient client;
+    private final BlockingQueue<DiscordEmbed> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread worker;
+    private volatile boolean isRunning = true;
+
+    /**
+     * @param webhookUrl  read before every message, so setting changes apply immediately
+     * @param sendLatency records how long each message Discord accepted took to post, retries included
+     */
+    public DiscordNotifier(@NotNull Supplier<String> webhookUrl, @NotNull LatencyHistogram sendLatency) {
+        this(webhookUrl, sendLatency, DEFAULT_RETRY_DELAY_MS);
+    }
+
+    /**
+     * @param retryDelayMs the delay before retrying a failed attempt, growing with each attempt,
+     *                     when Discord doesn't say how long to wait
+     */
+    DiscordNotifier(@NotNull Supplier<String> webhookUrl, @NotNull LatencyHistogram sendLatency, long retryDelayMs) {
+        this.webhookUrl = webhookUrl;
+        this.sendLatency = sendLatency;
+        this.retryDelayMs = retryDelayMs;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.worker = new Thread(this::drainQueue, "Git-Update-Listener-Discord");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queue an embed for sending. Drops it with a warning if the queue is full.
+     */
+    public void enqueue(@NotNull DiscordEmbed embed) {
+        if (!queue.offer(embed)) {
+            LOG.warn("Discord notification queue is full, dropping notification");
+        }
+    }
+
+    private void drainQueue() {
+        // Embeds taken from the queue that didn't fit into the previous message
+        Deque<DiscordEmbed> pending = new ArrayDeque<>(MAX_EMBEDS_PER_MESSAGE);
+        while (isRunning) {
+            try {
+                if (pending.isEmpty()) {
+                    pending.add(queue.take());
+                }
+                queue.drainTo(pending, MAX_EMBEDS_PER_MESSAGE - pending.size());
+                List<DiscordEmbed> batch = takeBatch(pending);
+                long startNanos = System.nanoTime();
+                // Failures return early or after giving up, either would skew how long posting takes
+                if (send(batch)) {
+                    sendLatency.record(System.nanoTime() - startNanos);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                LOG.error("Error sending Discord notification", e);
+            }
+        }
+    }
+
+    /**
+     * Take as many embeds as fit into one message, and at least one
+     */
+    static List<DiscordEmbed> takeBatch(Deque<DiscordEmbed> pending) {
+        List<DiscordEmbed> batch = new ArrayList<>(Math.min(pending.size(), MAX_EMBEDS_PER_MESSAGE));
+        int length = 0;
+        while (!pending.isEmpty() && batch.size() < MAX_EMBEDS_PER_MESSAGE) {
+            DiscordEmbed next = pending.peekFirst();
+            if (!batch.isEmpty() && length + next.length() > DiscordEmbed.MAX_TOTAL_LENGTH) {
+                break;
+            }
+            batch.add(pending.pollFirst());
+            length += next.length();
+        }
+        return batch;
+    }
+
+    /**
+     * @return whether Discord accepted every embed, false if it rejected any, gave up, or no webhook is configured
+     */
+    private boolean send(List<DiscordEmbed> batch) throws InterruptedException {
+        String url = webhookUrl.get();
+        if (url == null || url.isEmpty()) {
+            return false;
+        }
+        int status = post(url, batch);
+        if (status == 400 && batch.size() > 1) {
+            LOG.info("Discord rejected a message of " + batch.size() + " embeds, sending them one by one");
+            boolean accepted = true;
+            for (DiscordEmbed embed : batch) {
+                accepted &= isSuccess(post(url, List.of(embed)));
+            }
+            return accepted;
+        }
+        return isSuccess(status);
+    }
+
+    private static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Post one message, retrying on rate limits, server errors and I/O errors
+     *
+     * @return the status Discord last answered with, or 0 if it never answered
+     */
+    private int post(String url, List<DiscordEmbed> batch) throws InterruptedException {
+        StringBuilder json = new StringBuilder("{\"embeds\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) json.append(',');
+            batch.get(i).appendJson(json);
+        }
+        json.append("]}");
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json.toString()))
+                .build();
+
+        int status = 0;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            HttpResponse<String> response;
+            try {
+                response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                LOG.warn("Discord notification attempt " + attempt + " failed: " + e.getMessage());
+                if (attempt < MAX_ATTEMPTS) Thread.sleep(retryDelayMs * attempt);
+                continue;
+            }
+
+            status = response.statusCode();
+            if (isSuccess(status)) {
+                return status;
+            }
+            if (status == 429) {
+                long delay = retryAfterMs(response);
+                LOG.info("Discord rate limited the webhook, retrying in " + delay + " ms");
+                if (attempt < MAX_ATTEMPTS) Thread.sleep(delay);
+                continue;
+            }
+            if (status >= 500) {
+                LOG.warn("Discord notification failed with code: " + status + ", retrying");
+                if (attempt < MAX_ATTEMPTS) Thread.sleep(retryDelayMs * attempt);
+                continue;
+            }
+            LOG.warn("Discord notification failed with code: " + status);
+            return status;
+        }
+        LOG.warn("Giving up on Discord notification after " + MAX_ATTEMPTS + " attempts");
+        return status;
+    }
+
+    /**
+     * How long Discord asked us to wait, from the Retry-After header in (possibly fractional) seconds
+     */
+    static long retryAfterMs(HttpResponse<?> response) {
+        String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+        if (retryAfter != null) {
+            try {
+                long delay = (long) Math.ceil(Double.parseDouble(retryAfter.trim()) * 1000);
+                return Math.min(MAX_RETRY_DELAY_MS, Math.max(0, delay));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return DEFAULT_RETRY_DELAY_MS;
+    }
+
+    /**
+     * Stop the worker. Notifications still queued are dropped.
+     */
+    @Override
+    public void close() {
+        isRunning = false;
+        worker.interrupt();
+        queue.clear();
+    }
+}
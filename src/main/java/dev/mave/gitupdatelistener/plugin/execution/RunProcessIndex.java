@@ -0,0 +1,157 @@
+package dev.mave.gitupdatelistener.plugin.execution;
+
+import com.intellij.execution.ExecutionManager;
+import com.intellij.execution.RunManager;
+import com.intellij.execution.RunnerAndConfigurationSettings;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.ui.RunContentDescriptor;
+import com.intellij.execution.ui.RunContentManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the project's run configurations by name and the live processes of each configuration,
+ * so a trigger finds both with a hash lookup instead of scanning every configuration and descriptor.
+ * <p>
+ * Processes are tracked exactly, by the configuration they were started from, rather than by
+ * display name. The index is maintained by {@link RunProcessListener}, which receives the
+ * execution and run manager events for the project. Processes that were already running when the
+ * index was created, before any of those events reached it, are picked up from the project's run
+ * content once, on creation. The public API doesn't say which configuration started those, so they
+ * are matched by the name their run tab shows, and a tab renamed with a suffix like "(1)" is missed.
+ */
+@Service(Service.Level.PROJECT)
+public final class RunProcessIndex {
+    private final Project project;
+
+    /** Live process handlers by the unique ID of the configuration that started them */
+    private final Map<String, Set<ProcessHandler>> processesByConfigId = new ConcurrentHashMap<>();
+    /** Configurations by name, rebuilt from the RunManager after any configuration change */
+    private volatile Map<String, RunnerAndConfigurationSettings> configurationsByName;
+    private final AtomicLong configurationChanges = new AtomicLong();
+    /** Futures completed by the next process start of a configuration, by its unique ID */
+    private final Map<String, Queue<CompletableFuture<ProcessHandler>>> startWaiters = new ConcurrentHashMap<>();
+
+    public RunProcessIndex(Project project) {
+        this.project = project;
+        addRunningProcesses();
+    }
+
+    public static RunProcessIndex getInstance(@NotNull Project project) {
+        return project.getService(RunProcessIndex.class);
+    }
+
+    /**
+     * Find a run configuration by its exact name
+     */
+    @Nullable
+    public RunnerAndConfigurationSettings findConfiguration(@NotNull String name) {
+        Map<String, RunnerAndConfigurationSettings> byName = configurationsByName;
+        if (byName == null) {
+            long changesBefore = configurationChanges.get();
+            byName = new HashMap<>();
+            List<RunnerAndConfigurationSettings> allSettings = RunManager.getInstance(project).getAllSettings();
+            for (RunnerAndConfigurationSettings settings : allSettings) {
+                // Keep the first when two configuration types share a name, like the old linear scan did
+                byName.putIfAbsent(settings.getName(), settings);
+            }
+            // Don't cache a map that a concurrent change has already made stale
+            if (configurationChanges.get() == changesBefore) {
+                configurationsByName = byName;
+            }
+        }
+        return byName.get(name);
+    }
+
+    /**
+     * The processes currently running for a configuration
+     */
+    @NotNull
+    public Set<ProcessHandler> getRunningProcesses(@NotNull RunnerAndConfigurationSettings configuration) {
+        Set<ProcessHandler> processes = processesByConfigId.get(configuration.getUniqueID());
+        return processes != null ? Collections.unmodifiableSet(processes) : Collections.emptySet();
+    }
+
+    /**
+     * A future completed with the next process started for a configuration, whoever starts it
+     */
+    @NotNull
+    public CompletableFuture<ProcessHandler> awaitNextStart(@NotNull RunnerAndConfigurationSettings configuration) {
+        String id = configuration.getUniqueID();
+        CompletableFuture<ProcessHandler> started = new CompletableFuture<>();
+        startWaiters.computeIfAbsent(id, k -> new ConcurrentLinkedQueue<>()).add(started);
+        // Drop waiters that were given up on, e.g. by a timeout
+        started.whenComplete((handler, e) -> startWaiters.computeIfPresent(id, (k, waiters) -> {
+            waiters.remove(started);
+            return waiters.isEmpty() ? null : waiters;
+        }));
+        return started;
+    }
+
+    /**
+     * Index the processes running right now, by the configuration named like the run content showing them
+     */
+    private void addRunningProcesses() {
+        Set<ProcessHandler> running = new HashSet<>(Arrays.asList(ExecutionManager.getInstance(project).getRunningProcesses()));
+        if (running.isEmpty()) {
+            return;
+        }
+        for (RunContentDescriptor descriptor : RunContentManager.getInstance(project).getAllDescriptors()) {
+            ProcessHandler handler = descriptor.getProcessHandler();
+            if (handler == null || handler.isProcessTerminated() || !running.contains(handler)) {
+                continue;
+            }
+            RunnerAndConfigurationSettings configuration = findConfiguration(descriptor.getDisplayName());
+            if (configuration != null) {
+                processesByConfigId.computeIfAbsent(configuration.getUniqueID(), k -> ConcurrentHashMap.newKeySet()).add(handler);
+            }
+        }
+    }
+
+    void invalidateConfigurations() {
+        configurationChanges.incrementAndGet();
+        configurationsByName = null;
+    }
+
+    void configurationRenamed(@NotNull String oldId, @NotNull String newId) {
+        Set<ProcessHandler> processes = processesByConfigId.remove(oldId);
+        if (processes != null) {
+            processesByConfigId.merge(newId, processes, (a, b) -> {
+                a.addAll(b);
+                return a;
+            });
+        }
+    }
+
+    void processStarted(@NotNull RunnerAndConfigurationSettings configuration, @NotNull ProcessHandler handler) {
+        processesByConfigId.computeIfAbsent(configuration.getUniqueID(), k -> ConcurrentHashMap.newKeySet()).add(handler);
+        Queue<CompletableFuture<ProcessHandler>> waiters = startWaiters.remove(configuration.getUniqueID());
+        if (waiters != null) {
+            for (CompletableFuture<ProcessHandler> waiter : waiters) {
+                waiter.complete(handler);
+            }
+        }
+    }
+
+    void processTerminated(@NotNull RunnerAndConfigurationSettings configuration, @NotNull ProcessHandler handler) {
+        processesByConfigId.computeIfPresent(configuration.getUniqueID(), (id, processes) -> {
+            processes.remove(handler);
+            return processes.isEmpty() ? null : processes;
+        });
+    }
+}
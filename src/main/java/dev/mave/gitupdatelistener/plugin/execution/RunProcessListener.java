@@ -0,0 +1,62 @@
+package dev.mave.gitupdatelistener.plugin.execution;
+
+import com.intellij.execution.ExecutionListener;
+import com.intellij.execution.RunManager;
+import com.intellij.execution.RunManagerListener;
+import com.intellij.execution.RunnerAndConfigurationSettings;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Feeds execution and run configuration events into the project's {@link RunProcessIndex}
+ */
+public class RunProcessListener implements ExecutionListener, RunManagerListener {
+    private final Project project;
+
+    public RunProcessListener(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void processStarted(@NotNull String executorId, @NotNull ExecutionEnvironment env, @NotNull ProcessHandler handler) {
+        RunnerAndConfigurationSettings configuration = env.getRunnerAndConfigurationSettings();
+        if (configuration != null) {
+            RunProcessIndex.getInstance(project).processStarted(configuration, handler);
+        }
+    }
+
+    @Override
+    public void processTerminated(@NotNull String executorId, @NotNull ExecutionEnvironment env, @NotNull ProcessHandler handler, int exitCode) {
+        RunnerAndConfigurationSettings configuration = env.getRunnerAndConfigurationSettings();
+        if (configuration != null) {
+            RunProcessIndex.getInstance(project).processTerminated(configuration, handler);
+        }
+    }
+
+    @Override
+    public void runConfigurationAdded(@NotNull RunnerAndConfigurationSettings settings) {
+        RunProcessIndex.getInstance(project).invalidateConfigurations();
+    }
+
+    @Override
+    public void runConfigurationRemoved(@NotNull RunnerAndConfigurationSettings settings) {
+        RunProcessIndex.getInstance(project).invalidateConfigurations();
+    }
+
+    @Override
+    public void runConfigurationChanged(@NotNull RunnerAndConfigurationSettings settings, @Nullable String existingId) {
+        RunProcessIndex index = RunProcessIndex.getInstance(project);
+        if (existingId != null && !existingId.equals(settings.getUniqueID())) {
+            index.configurationRenamed(existingId, settings.getUniqueID());
+        }
+        index.invalidateConfigurations();
+    }
+
+    @Override
+    public void stateLoaded(@NotNull RunManager runManager, boolean isFirstLoadState) {
+        RunProcessIndex.getInstance(project).invalidateConfigurations();
+    }
+}
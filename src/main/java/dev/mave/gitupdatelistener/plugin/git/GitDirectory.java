@@ -0,0 +1,280 @@
+package dev.mave.gitupdatelistener.plugin.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reads a working tree's git state straight from its files: the branch HEAD points to, what a branch
+ * points to, and the upstream a branch pulls from.
+ * <p>
+ * HEAD and the config are cached and read again only when their file, modification time or size changes,
+ * so asking costs a file stat. Linked worktrees, whose {@code .git} is a file pointing elsewhere, keep
+ * their HEAD apart and share refs and config with the main repository. Methods return null when the
+ * files don't say, for example in a repository using the reftable format, and callers ask git instead.
+ */
+final class GitDirectory {
+    static final String BRANCH_PREFIX = "refs/heads/";
+    private static final String SYMBOLIC_REF_PREFIX = "ref: ";
+    private static final String GITDIR_PREFIX = "gitdir:";
+
+    private final Path commonDir;
+    private final CachedFile<String> head;
+    private final CachedFile<GitConfig> config;
+
+    private GitDirectory(Path gitDir, Path commonDir) {
+        this.commonDir = commonDir;
+        this.head = new CachedFile<>(gitDir.resolve("HEAD"), GitDirectory::parseHead);
+        this.config = new CachedFile<>(commonDir.resolve("config"), GitConfig::parse);
+    }
+
+    /**
+     * Find the git directory of a working tree
+     *
+     * @throws IOException if the directory isn't a git working tree
+     */
+    @NotNull
+    static GitDirectory open(@NotNull Path workTree) throws IOException {
+        Path dotGit = workTree.resolve(".git");
+        Path gitDir;
+        if (Files.isDirectory(dotGit)) {
+            gitDir = dotGit;
+        } else if (Files.isRegularFile(dotGit)) {
+            String pointer = Files.readString(dotGit, StandardCharsets.UTF_8).trim();
+            if (!pointer.startsWith(GITDIR_PREFIX)) {
+                throw new IOException("Unrecognized .git file in " + workTree);
+            }
+            gitDir = workTree.resolve(pointer.substring(GITDIR_PREFIX.length()).trim()).normalize();
+        } else {
+            throw new IOException("Not a git working tree: " + workTree);
+        }
+
+        Path commonDir = gitDir;
+        Path commonDirFile = gitDir.resolve("commondir");
+        if (Files.isRegularFile(commonDirFile)) {
+            commonDir = gitDir.resolve(Files.readString(commonDirFile, StandardCharsets.UTF_8).trim()).normalize();
+        }
+        return new GitDirectory(gitDir, commonDir);
+    }
+
+    /**
+     * The full ref HEAD points to, such as "refs/heads/main", or null if HEAD is detached or unreadable
+     */
+    @Nullable
+    String getHeadRef() throws IOException {
+        return head.get();
+    }
+
+    /**
+     * The commit a ref points to, from its loose file or packed-refs, or null if neither has it
+     */
+    @Nullable
+    String readRef(@NotNull String ref) throws IOException {
+        try {
+            String value = Files.readString(commonDir.resolve(ref), StandardCharsets.US_ASCII).trim();
+            return isObjectId(value) ? value : null;
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            // Packed, or not there at all
+        }
+
+        Path packedRefs = commonDir.resolve("packed-refs");
+        try (BufferedReader reader = Files.newBufferedReader(packedRefs, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // "<id> <ref>", with comments and peeled tags ("^<id>") in between
+                int space = line.indexOf(' ');
+                if (space > 0 && line.length() - space - 1 == ref.length() && line.endsWith(ref)) {
+                    String value = line.substring(0, space);
+                    return isObjectId(value) ? value : null;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing packed
+        }
+        return null;
+    }
+
+    /**
+     * Where a branch pulls from, per its {@code branch.<name>.remote} and {@code branch.<name>.merge}
+     * settings, or origin and the branch of the same name there
+     */
+    @NotNull
+    Upstream getUpstream(@NotNull String branch) throws IOException {
+        GitConfig current = config.get();
+        String remote = current != null ? current.get("branch", branch, "remote") : null;
+        String merge = current != null ? current.get("branch", branch, "merge") : null;
+        return new Upstream(remote != null ? remote : "origin", merge != null ? merge : BRANCH_PREFIX + branch);
+    }
+
+    @Nullable
+    private static String parseHead(String content) {
+        String value = content.trim();
+        if (!value.startsWith(SYMBOLIC_REF_PREFIX)) {
+            return null;
+        }
+        String ref = value.substring(SYMBOLIC_REF_PREFIX.length()).trim();
+        // Reftable repositories keep a placeholder here and the real HEAD in the table
+        return ref.equals("refs/heads/.invalid") ? null : ref;
+    }
+
+    private static boolean isObjectId(String value) {
+        if (value.length() != 40 && value.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A remote and the ref on it that a branch follows
+     */
+    static final class Upstream {
+        final String remote;
+        final String mergeRef;
+
+        Upstream(String remote, String mergeRef) {
+            this.remote = remote;
+            this.mergeRef = mergeRef;
+        }
+    }
+
+    /**
+     * A file parsed once and parsed again only after it changed, judged by file key, modification time and size.
+     * Git replaces HEAD and the config by renaming a lock file over them, which gives them a new file key
+     * where the file system has them.
+     */
+    private static final class CachedFile<T> {
+        /**
+         * A file modified this recently may change again without its modification time, at the file system's
+         * granularity, or its size changing, so it isn't trusted from the cache
+         */
+        private static final long RACY_WINDOW_MS = 1000;
+
+        private final Path path;
+        private final Parser<T> parser;
+        private Object fileKey;
+        private FileTime modified;
+        private long size = -1;
+        private T value;
+
+        CachedFile(Path path, Parser<T> parser) {
+            this.path = path;
+            this.parser = parser;
+        }
+
+        @Nullable
+        synchronized T get() throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                fileKey = null;
+                modified = null;
+                size = -1;
+                value = null;
+                return null;
+            }
+            boolean racy = System.currentTimeMillis() - attributes.lastModifiedTime().toMillis() < RACY_WINDOW_MS;
+            if (!racy && Objects.equals(attributes.fileKey(), fileKey) && attributes.lastModifiedTime().equals(modified)
+                    && attributes.size() == size) {
+                return value;
+            }
+            value = parser.parse(Files.readString(path, StandardCharsets.UTF_8));
+            fileKey = attributes.fileKey();
+            modified = attributes.lastModifiedTime();
+            size = attributes.size();
+            return value;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Parser<T> {
+        @Nullable
+        T parse(String content) throws IOException;
+    }
+
+    /**
+     * Just enough of git's config format to look up plain settings. Includes are not followed.
+     */
+    static final class GitConfig {
+        private final Map<String, String> values = new HashMap<>();
+
+        @NotNull
+        static GitConfig parse(String content) {
+            GitConfig config = new GitConfig();
+            String section = "";
+            for (String rawLine : content.split("\n")) {
+                String line = rawLine.trim();
+                if (line.isEmpty() || line.charAt(0) == '#' || line.charAt(0) == ';') {
+                    continue;
+                }
+                if (line.charAt(0) == '[') {
+                    int end = line.lastIndexOf(']');
+                    section = end > 0 ? parseSection(line.substring(1, end)) : "";
+                    continue;
+                }
+                int equals = line.indexOf('=');
+                String key = (equals < 0 ? line : line.substring(0, equals)).trim().toLowerCase(Locale.ROOT);
+                String value = equals < 0 ? "true" : unquote(stripComment(line.substring(equals + 1)).trim());
+                // Later values win, as for git's single-valued settings
+                config.values.put(section + "." + key, value);
+            }
+            return config;
+        }
+
+        @Nullable
+        String get(String section, @Nullable String subsection, String key) {
+            String name = section.toLowerCase(Locale.ROOT) + (subsection != null ? "\"" + subsection + "\"" : "")
+                    + "." + key.toLowerCase(Locale.ROOT);
+            return values.get(name);
+        }
+
+        /**
+         * "branch \"main\"" becomes branch"main": section names are case-insensitive, subsections are not
+         */
+        private static String parseSection(String header) {
+            int quote = header.indexOf('"');
+            if (quote < 0) {
+                return header.trim().toLowerCase(Locale.ROOT);
+            }
+            String subsection = header.substring(quote + 1, Math.max(quote + 1, header.lastIndexOf('"')))
+                    .replace("\\\"", "\"").replace("\\\\", "\\");
+            return header.substring(0, quote).trim().toLowerCase(Locale.ROOT) + "\"" + subsection + "\"";
+        }
+
+        private static String stripComment(String value) {
+            boolean quoted = false;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && (c == '#' || c == ';')) {
+                    return value.substring(0, i);
+                }
+            }
+            return value;
+        }
+
+        private static String unquote(String value) {
+            return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                    ? value.substring(1, value.length() - 1) : value;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package dev.mave.gitupdatelistener.plugin.git;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Brings a working tree up to the commit a push moved its branch to, with as little work as it takes.
+ * <p>
+ * The checked-out branch and the branch's commit are read from the repository's files rather than by
+ * running git. A working tree that already has the pushed commit isn't touched at all. Otherwise only
+ * the branch's upstream ref is fetched, not every ref of the remote, and the branch is fast-forwarded
+ * to it, failing rather than merging if it has diverged.
+ * <p>
+ * Git itself runs through a {@link CommandRunner}, so the IDE can stream its output to a console and
+ * a headless caller can run it directly. Nothing here depends on the IDE.
+ */
+public final class GitSync {
+    private static final Logger LOG = Logger.getInstance(GitSync.class);
+
+    /** What a sync did */
+    public enum Result {
+        /** Nothing, the working tree has another branch checked out */
+        OTHER_BRANCH,
+        /** Nothing, the branch already points to the pushed commit */
+        UP_TO_DATE,
+        /** Fetched the upstream ref and fast-forwarded to it */
+        FAST_FORWARDED
+    }
+
+    /**
+     * Runs git in a working tree
+     */
+    @FunctionalInterface
+    public interface CommandRunner {
+        /**
+         * @return what git printed to stdout
+         * @throws IOException if git couldn't be run or exited with an error
+         */
+        @NotNull
+        String run(@NotNull Path workTree, @NotNull List<String> args) throws IOException;
+    }
+
+    private final Map<Path, GitDirectory> directories = new ConcurrentHashMap<>();
+
+    /**
+     * The branch checked out in a working tree, or null if HEAD is detached
+     */
+    @Nullable
+    public String getCurrentBranch(@NotNull Path workTree, @NotNull CommandRunner git) throws IOException {
+        String headRef = directory(workTree).getHeadRef();
+        if (headRef == null) {
+            // Detached, or a HEAD the files don't tell, so ask git
+            String branch = git.run(workTree, List.of("rev-parse", "--abbrev-ref", "HEAD")).trim();
+            return branch.isEmpty() || branch.equals("HEAD") ? null : branch;
+        }
+        return headRef.startsWith(GitDirectory.BRANCH_PREFIX) ? headRef.substring(GitDirectory.BRANCH_PREFIX.length()) : null;
+    }
+
+    /**
+     * Bring a working tree's branch up to date, if it is the one checked out
+     *
+     * @param branch     the branch that was pushed
+     * @param pushedHead the commit the push moved it to, or null if unknown, which always fetches
+     */
+    @NotNull
+    public Result sync(@NotNull Path workTree, @NotNull String branch, @Nullable String pushedHead,
+                       @NotNull CommandRunner git) throws IOException {
+        if (!branch.equals(getCurrentBranch(workTree, git))) {
+            return Result.OTHER_BRANCH;
+        }
+        GitDirectory directory = directory(workTree);
+        if (pushedHead != null && pushedHead.equalsIgnoreCase(String.valueOf(directory.readRef(GitDirectory.BRANCH_PREFIX + branch)))) {
+            LOG.debug("Branch " + branch + " in " + workTree + " is already at " + pushedHead);
+            return Result.UP_TO_DATE;
+        }
+
+        GitDirectory.Upstream upstream = directory.getUpstream(branch);
+        git.run(workTree, List.of("fetch", "--quiet", "--no-tags", upstream.remote, upstream.mergeRef));
+        git.run(workTree, List.of("merge", "--quiet", "--ff-only", "FETCH_HEAD"));
+        return Result.FAST_FORWARDED;
+    }
+
+    private GitDirectory directory(Path workTree) throws IOException {
+        Path key = workTree.toAbsolutePath().normalize();
+        GitDirectory directory = directories.get(key);
+        if (directory == null) {
+            directory = GitDirectory.open(key);
+            directories.put(key, directory);
+        }
+        return directory;
+    }
+}
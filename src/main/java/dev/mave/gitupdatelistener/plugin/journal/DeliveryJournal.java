@@ -0,0 +1,523 @@
+package dev.mave.gitupdatelistener.plugin.journal;
+
+import com.intellij.openapi.diagnostic.Logger;
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerKey;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only on-disk record of accepted deliveries, so a push survives an IDE restart, a crash
+ * or a moment with no project open, and a redelivered push doesn't restart anything twice.
+ * <p>
+ * Each delivery is appended as one entry per run configuration it triggers. Callers {@link #sync()}
+ * before acknowledging the delivery; concurrent callers share a single {@code fsync}. An entry is
+ * pending until a run for its configuration finishes, and pending entries from earlier sessions, or
+ * whose project wasn't open, are handed out again by {@link #takeReplayable(String)}.
+ * <p>
+ * The journal is a sequence of segment files. A new one is started on every open and whenever the
+ * current one grows past a few megabytes; {@link #compact()} rewrites what is still needed into a
+ * fresh segment and deletes the rest. Delivery IDs are remembered for deduplication in a bounded
+ * index, oldest first out, and {@link #tryReserve(String)} checks and claims one in a single step.
+ * A torn record at the end of a segment, left by a crash, ends that segment.
+ */
+public final class DeliveryJournal implements AutoCloseable {
+    private static final Logger LOG = Logger.getInstance(DeliveryJournal.class);
+
+    /** "GULJ" */
+    private static final int MAGIC = 0x47554c4a;
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte ACCEPTED = 1;
+    private static final byte DONE = 2;
+    private static final byte SEEN = 3;
+
+    private static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /** Pending entries older than this are dropped on compaction instead of waiting forever for their project */
+    private static final long MAX_PENDING_AGE_MS = TimeUnit.DAYS.toMillis(7);
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+    public static final int DEFAULT_DEDUP_CAPACITY = 10_000;
+
+    @Nullable
+    private final Path directory;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+
+    // Guarded by writeLock
+    private FileChannel segment;
+    private long segmentNumber;
+    private long segmentSize;
+    private long nextSequence = 1;
+    private long writtenBytes;
+    private final Map<Long, JournalEntry> pending = new TreeMap<>();
+    private final LinkedHashMap<String, Boolean> seenDeliveries;
+    /** Deliveries being handled, which aren't journaled yet */
+    private final Set<String> reservedDeliveries = new HashSet<>();
+
+    // Guarded by syncLock
+    private long syncedBytes;
+
+    private DeliveryJournal(@Nullable Path directory, int dedupCapacity) {
+        this.directory = directory;
+        this.seenDeliveries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > dedupCapacity;
+            }
+        };
+    }
+
+    /**
+     * Open the journal in a directory, loading what earlier sessions left pending
+     */
+    @NotNull
+    public static DeliveryJournal open(@NotNull Path directory, int dedupCapacity) throws IOException {
+        Files.createDirectories(directory);
+        DeliveryJournal journal = new DeliveryJournal(directory, dedupCapacity);
+        synchronized (journal.writeLock) {
+            long lastSegment = 0;
+            for (Map.Entry<Long, Path> segment : journal.listSegments().entrySet()) {
+                journal.load(segment.getValue());
+                lastSegment = segment.getKey();
+            }
+            journal.startSegment(lastSegment + 1);
+        }
+        return journal;
+    }
+
+    /**
+     * A journal that keeps nothing on disk, for when the journal directory can't be used.
+     * It still deduplicates deliveries for as long as the IDE runs.
+     */
+    @NotNull
+    public static DeliveryJournal inMemory(int dedupCapacity) {
+        return new DeliveryJournal(null, dedupCapacity);
+    }
+
+    /**
+     * Claim a delivery for handling, unless it has already been accepted or is being handled on
+     * another thread. A successful claim must be given up with {@link #release(String)} once the
+     * delivery is handled; entries appended for it meanwhile keep its ID remembered.
+     *
+     * @return false if the delivery is a duplicate
+     */
+    public boolean tryReserve(@NotNull String deliveryId) {
+        if (deliveryId.isEmpty()) {
+            return true;
+        }
+        synchronized (writeLock) {
+            return !seenDeliveries.containsKey(deliveryId) && reservedDeliveries.add(deliveryId);
+        }
+    }
+
+    /**
+     * Give up a claim taken by {@link #tryReserve(String)}. Unless an entry was appended for the
+     * delivery, a redelivery is handled again.
+     */
+    public void release(@NotNull String deliveryId) {
+        if (deliveryId.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            reservedDeliveries.remove(deliveryId);
+        }
+    }
+
+    /**
+     * Append an accepted delivery for one run configuration. It is only durable after {@link #sync()}.
+     *
+     * @return the entry's sequence number
+     */
+    public long append(@NotNull String deliveryId, @NotNull TriggerKey key, @NotNull PushEvent event) throws IOException {
+        synchronized (writeLock) {
+            JournalEntry entry = new JournalEntry(nextSequence, deliveryId, System.currentTimeMillis(), key, event);
+            write(encodeAccepted(entry));
+            nextSequence++;
+            pending.put(entry.getSequence(), entry);
+            remember(deliveryId);
+            return entry.getSequence();
+        }
+    }
+
+    /**
+     * The sequence number of the newest entry appended, or 0 if there is none
+     */
+    public long getLastSequence() {
+        synchronized (writeLock) {
+            return nextSequence - 1;
+        }
+    }
+
+    /**
+     * Wait until everything appended so far is on disk. Callers arriving while an {@code fsync} is in
+     * progress are covered by the next one, so a burst of deliveries costs a couple of syncs, not one each.
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (writeLock) {
+            target = writtenBytes;
+        }
+        synchronized (syncLock) {
+            if (syncedBytes >= target) {
+                return;
+            }
+            FileChannel channel;
+            synchronized (writeLock) {
+                // Cover everything written while we waited for the lock as well
+                target = writtenBytes;
+                channel = segment;
+            }
+            if (channel != null) {
+                try {
+                    channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // The segment was rolled over, which forced it before closing
+                }
+            }
+            syncedBytes = target;
+        }
+    }
+
+    /**
+     * Mark the pending entries a finished run covered as done: those for its configuration up to its
+     * sequence number, which were coalesced into it, and later redeliveries of the same commit, which were dropped.
+     */
+    public void complete(@NotNull TriggerKey key, long sequence, @Nullable String headCommitId) {
+        synchronized (writeLock) {
+            Iterator<JournalEntry> entries = pending.values().iterator();
+            while (entries.hasNext()) {
+                JournalEntry entry = entries.next();
+                if (!entry.getKey().equals(key) || (entry.getSequence() > sequence
+                        && (headCommitId == null || !headCommitId.equals(entry.getEvent().getHeadCommitId())))) {
+                    continue;
+                }
+                entries.remove();
+                try {
+                    // Not synced: if this is lost in a crash, the delivery runs once more
+                    write(encodeDone(entry.getSequence()));
+                } catch (IOException e) {
+                    LOG.warn("Failed to record completed delivery " + entry.getDeliveryId() + " in the journal", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep the pending entries for a configuration up to a sequence number until its project opens
+     */
+    public void awaitProject(@NotNull TriggerKey key, long sequence) {
+        synchronized (writeLock) {
+            for (JournalEntry entry : pending.values()) {
+                if (entry.getSequence() > sequence) {
+                    break;
+                }
+                if (entry.getKey().equals(key)) {
+                    entry.waitingForProject = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the entries waiting for a project that just opened: the newest one per run configuration,
+     * since it covers the older ones. Entries without a project match any project.
+     */
+    @NotNull
+    public List<JournalEntry> takeReplayable(@NotNull String projectName) {
+        Map<TriggerKey, JournalEntry> newest = new HashMap<>();
+        synchronized (writeLock) {
+            for (JournalEntry entry : pending.values()) {
+                if (entry.waitingForProject && (entry.getProjectName() == null || entry.getProjectName().equals(projectName))) {
+                    entry.waitingForProject = false;
+                    newest.put(entry.getKey(), entry);
+                }
+            }
+        }
+        return new ArrayList<>(newest.values());
+    }
+
+    /**
+     * Rewrite the pending entries and remembered delivery IDs into a fresh segment and delete the older ones
+     */
+    public void compact() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            long cutoff = System.currentTimeMillis() - MAX_PENDING_AGE_MS;
+            pending.values().removeIf(entry -> {
+                if (entry.getAcceptedAtMillis() >= cutoff) {
+                    return false;
+                }
+                LOG.warn("Dropping delivery " + entry.getDeliveryId() + " for " + entry.getKey()
+                        + ", its project hasn't opened in " + TimeUnit.MILLISECONDS.toDays(MAX_PENDING_AGE_MS) + " days");
+                return true;
+            });
+
+            long firstKept = segmentNumber + 1;
+            startSegment(firstKept);
+            for (String deliveryId : seenDeliveries.keySet()) {
+                write(encodeSeen(deliveryId));
+            }
+            for (JournalEntry entry : pending.values()) {
+                write(encodeAccepted(entry));
+            }
+            // The old segments are about to go, so the copies and the new segment's entry must be on disk first
+            segment.force(false);
+            syncDirectory();
+
+            for (Map.Entry<Long, Path> old : listSegments().entrySet()) {
+                if (old.getKey() < firstKept) {
+                    Files.deleteIfExists(old.getValue());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            closeSegment();
+        }
+    }
+
+    private void remember(String deliveryId) {
+        if (!deliveryId.isEmpty()) {
+            seenDeliveries.put(deliveryId, Boolean.TRUE);
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            });
+        }
+        return segments;
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private void startSegment(long number) throws IOException {
+        closeSegment();
+        FileChannel channel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        segment = channel;
+        segmentNumber = number;
+        segmentSize = SEGMENT_HEADER_SIZE;
+        // Forcing a segment only covers its contents, its directory entry needs the directory forced
+        syncDirectory();
+    }
+
+    /**
+     * Make the segments created in the journal's directory survive a crash. Windows can't open a directory
+     * for this, and its file system commits new directory entries on its own.
+     */
+    private void syncDirectory() throws IOException {
+        if (IS_WINDOWS) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.force(false);
+            segment.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close journal segment " + segmentNumber, e);
+        }
+        segment = null;
+    }
+
+    private void write(byte[] payload) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        if (segmentSize + RECORD_HEADER_SIZE + payload.length > MAX_SEGMENT_SIZE && segmentSize > SEGMENT_HEADER_SIZE) {
+            startSegment(segmentNumber + 1);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .flip();
+        while (record.hasRemaining()) {
+            segment.write(record);
+        }
+        segmentSize += record.limit();
+        writtenBytes += record.limit();
+    }
+
+    private void load(Path file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (data.remaining() < SEGMENT_HEADER_SIZE || data.getInt() != MAGIC) {
+            LOG.warn("Skipping journal segment with an unknown format: " + file);
+            return;
+        }
+        int version = data.getInt();
+        if (version != FORMAT_VERSION) {
+            LOG.warn("Skipping journal segment of format version " + version + ": " + file);
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        while (data.remaining() >= RECORD_HEADER_SIZE) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                LOG.warn("Journal segment " + file + " ends in a torn record, ignoring the rest of it");
+                return;
+            }
+            crc.reset();
+            crc.update(data.array(), data.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                LOG.warn("Journal segment " + file + " has a corrupt record, ignoring the rest of it");
+                return;
+            }
+            ByteBuffer payload = data.slice(data.position(), length);
+            data.position(data.position() + length);
+            try {
+                apply(payload);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                LOG.warn("Journal segment " + file + " has an unreadable record, ignoring the rest of it");
+                return;
+            }
+        }
+    }
+
+    private void apply(ByteBuffer payload) {
+        byte type = payload.get();
+        switch (type) {
+            case ACCEPTED: {
+                long sequence = payload.getLong();
+                long acceptedAt = payload.getLong();
+                String deliveryId = readString(payload);
+                String projectName = readString(payload);
+                String configName = readString(payload);
+                PushEvent event = new PushEvent(readString(payload), readString(payload), readString(payload),
+                        readString(payload), readString(payload), null);
+                JournalEntry entry = new JournalEntry(sequence, deliveryId, acceptedAt, new TriggerKey(projectName, configName), event);
+                // Whatever an earlier session left pending runs again once its project is open
+                entry.waitingForProject = true;
+                pending.put(sequence, entry);
+                remember(deliveryId);
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                break;
+            }
+            case DONE:
+                pending.remove(payload.getLong());
+                break;
+            case SEEN:
+                remember(readString(payload));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record type " + type);
+        }
+    }
+
+    private static byte[] encodeAccepted(JournalEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        PushEvent event = entry.getEvent();
+        out.writeByte(ACCEPTED);
+        out.writeLong(entry.getSequence());
+        out.writeLong(entry.getAcceptedAtMillis());
+        writeString(out, entry.getDeliveryId());
+        writeString(out, entry.getProjectName());
+        writeString(out, entry.getConfigName());
+        writeString(out, event.getRef());
+        writeString(out, event.getRepositoryFullName());
+        writeString(out, event.getHeadCommitId());
+        writeString(out, event.getHeadCommitMessage());
+        writeString(out, event.getHeadCommitAuthorName());
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeDone(long sequence) {
+        return ByteBuffer.allocate(9).put(DONE).putLong(sequence).array();
+    }
+
+    private static byte[] encodeSeen(String deliveryId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(SEEN);
+        writeString(out, deliveryId);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write a string as its UTF-8 length and bytes, or -1 for null
+     */
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,67 @@
+package dev.mave.gitupdatelistener.plugin.journal;
+
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerKey;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An accepted delivery as recorded in the {@link DeliveryJournal}: the push and one run configuration it triggers
+ */
+public final class JournalEntry {
+    private final long sequence;
+    private final String deliveryId;
+    private final long acceptedAtMillis;
+    private final TriggerKey key;
+    private final PushEvent event;
+
+    /** Whether the entry is waiting for its project to open before it is run again */
+    boolean waitingForProject;
+
+    JournalEntry(long sequence, @NotNull String deliveryId, long acceptedAtMillis, @NotNull TriggerKey key, @NotNull PushEvent event) {
+        this.sequence = sequence;
+        this.deliveryId = deliveryId;
+        this.acceptedAtMillis = acceptedAtMillis;
+        this.key = key;
+        this.event = event;
+    }
+
+    /**
+     * Increases with every entry appended, across restarts
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * The X-GitHub-Delivery ID, or an empty string if the request didn't have one
+     */
+    @NotNull
+    public String getDeliveryId() {
+        return deliveryId;
+    }
+
+    public long getAcceptedAtMillis() {
+        return acceptedAtMillis;
+    }
+
+    @NotNull
+    public TriggerKey getKey() {
+        return key;
+    }
+
+    @Nullable
+    public String getProjectName() {
+        return key.getProjectName();
+    }
+
+    @NotNull
+    public String getConfigName() {
+        return key.getConfigName();
+    }
+
+    @NotNull
+    public PushEvent getEvent() {
+        return event;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.mave.gitupdatelistener.plugin.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-bucket latency histogram that can be recorded into from any thread without allocating.
+ * The bucket bounds span sub-millisecond request handling up to multi-minute builds.
+ */
+public final class LatencyHistogram {
+    /** Upper bounds of the buckets in nanoseconds, in seconds: 0.0001 0.00025 0.0005 0.001 ... 300 */
+    static final long[] BUCKET_BOUNDS_NANOS = {
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L,
+            10_000_000_000L, 30_000_000_000L, 60_000_000_000L,
+            120_000_000_000L, 300_000_000_000L
+    };
+
+    /** Observations per bucket, the last one counting everything above the highest bound */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_NANOS.length + 1);
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Record one observation
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Copy the current counts. Observations recorded meanwhile may be missing from either the counts or the sum.
+     */
+    @NotNull
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sumNanos.sum());
+    }
+
+    /**
+     * A point-in-time copy of a histogram
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long sumNanos;
+        private final long count;
+
+        Snapshot(long[] counts, long sumNanos) {
+            this.counts = counts;
+            this.sumNanos = sumNanos;
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSumNanos() {
+            return sumNanos;
+        }
+
+        public double getMeanMillis() {
+            return count == 0 ? 0 : sumNanos / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * Observations at or below each bucket bound, the last entry being the total
+         */
+        long cumulativeCount(int bucket) {
+            long total = 0;
+            for (int i = 0; i <= bucket; i++) {
+                total += counts[i];
+            }
+            return total;
+        }
+
+        /**
+         * Estimate a quantile by interpolating linearly within the bucket it falls into
+         *
+         * @param quantile between 0 and 1
+         */
+        public double getQuantileMillis(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            double rank = quantile * count;
+            long below = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0 && below + counts[i] >= rank) {
+                    long lower = i == 0 ? 0 : BUCKET_BOUNDS_NANOS[i - 1];
+                    if (i == BUCKET_BOUNDS_NANOS.length) {
+                        // Nothing to interpolate towards above the highest bound
+                        return lower / 1e6;
+                    }
+                    long upper = BUCKET_BOUNDS_NANOS[i];
+                    double position = Math.max(0, rank - below) / counts[i];
+                    return (lower + (upper - lower) * position) / 1e6;
+                }
+                below += counts[i];
+            }
+            return BUCKET_BOUNDS_NANOS[BUCKET_BOUNDS_NANOS.length - 1] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package dev.mave.gitupdatelistener.plugin.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms for every stage a delivery passes through, from accepting the connection to
+ * announcing the restart, plus delivery and trigger outcome counters.
+ * <p>
+ * Recording only bumps preallocated atomic counters, so it is safe on the request path.
+ * Rendering for {@code GET /metrics} uses the Prometheus text exposition format.
+ */
+public final class TriggerMetrics {
+    private static final String PREFIX = "git_update_listener_";
+
+    public enum Stage {
+        /** From accept() returning to a worker picking the connection up */
+        ACCEPT,
+        /** Reading the request head and body off the socket */
+        READ,
+        /** Parsing the push payload */
+        PARSE,
+        /** Matching the push against the trigger rules */
+        MATCH,
+        /** Pulling the pushed commit into the working tree, waiting for another run's pull included */
+        SYNC,
+        /** Building while the old process still runs, only with build before stop enabled */
+        BUILD,
+        /** Stopping the running processes of the configuration */
+        STOP,
+        /** Handing the configuration to the run executor */
+        START,
+        /** Posting a batch Discord accepted, retries included. Batches it rejected or that were given up on aren't recorded. */
+        NOTIFY;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    public enum Outcome {
+        SUCCEEDED, FAILED, CANCELLED,
+        /** Pulled, but not restarted because the push didn't change a path the rule cares about */
+        PULLED_ONLY;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final LongAdder deliveries = new LongAdder();
+    /** Rejected deliveries by the HTTP status they were answered with */
+    private final AtomicLongArray rejectedByStatus = new AtomicLongArray(600);
+    private final LongAdder failedDeliveries = new LongAdder();
+    private final LongAdder[] triggers = new LongAdder[Outcome.values().length];
+
+    public TriggerMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < triggers.length; i++) {
+            triggers[i] = new LongAdder();
+        }
+    }
+
+    public void record(@NotNull Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    @NotNull
+    public LatencyHistogram getHistogram(@NotNull Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    /**
+     * Count a request read off the wire, whatever becomes of it
+     */
+    public void deliveryReceived() {
+        deliveries.increment();
+    }
+
+    /**
+     * Count a delivery refused with a client or server error status
+     */
+    public void deliveryRejected(int statusCode) {
+        if (statusCode >= 0 && statusCode < rejectedByStatus.length()) {
+            rejectedByStatus.incrementAndGet(statusCode);
+        }
+    }
+
+    /**
+     * Count a delivery that failed on our side while being handled
+     */
+    public void deliveryFailed() {
+        failedDeliveries.increment();
+    }
+
+    public void triggerFinished(@NotNull Outcome outcome) {
+        triggers[outcome.ordinal()].increment();
+    }
+
+    public long getDeliveries() {
+        return deliveries.sum();
+    }
+
+    public long getRejectedDeliveries() {
+        long total = 0;
+        for (int status = 0; status < rejectedByStatus.length(); status++) {
+            total += rejectedByStatus.get(status);
+        }
+        return total;
+    }
+
+    public long getFailedDeliveries() {
+        return failedDeliveries.sum();
+    }
+
+    public long getTriggers(@NotNull Outcome outcome) {
+        return triggers[outcome.ordinal()].sum();
+    }
+
+    /**
+     * Render every metric in the Prometheus text exposition format, version 0.0.4
+     */
+    @NotNull
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(8192);
+
+        String histogram = PREFIX + "stage_duration_seconds";
+        out.append("# HELP ").append(histogram).append(" Time spent in each stage of handling a delivery\n");
+        out.append("# TYPE ").append(histogram).append(" histogram\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = stages[stage.ordinal()].snapshot();
+            for (int bucket = 0; bucket < LatencyHistogram.BUCKET_BOUNDS_NANOS.length; bucket++) {
+                out.append(histogram).append("_bucket{stage=\"").append(stage.label).append("\",le=\"")
+                        .append(seconds(LatencyHistogram.BUCKET_BOUNDS_NANOS[bucket])).append("\"} ")
+                        .append(snapshot.cumulativeCount(bucket)).append('\n');
+            }
+            out.append(histogram).append("_bucket{stage=\"").append(stage.label).append("\",le=\"+Inf\"} ")
+                    .append(snapshot.getCount()).append('\n');
+            out.append(histogram).append("_sum{stage=\"").append(stage.label).append("\"} ")
+                    .append(seconds(snapshot.getSumNanos())).append('\n');
+            out.append(histogram).append("_count{stage=\"").append(stage.label).append("\"} ")
+                    .append(snapshot.getCount()).append('\n');
+        }
+
+        counter(out, "deliveries_total", "Webhook requests received", deliveries.sum());
+
+        String rejected = PREFIX + "deliveries_rejected_total";
+        out.append("# HELP ").append(rejected).append(" Webhook requests refused, by response status\n");
+        out.append("# TYPE ").append(rejected).append(" counter\n");
+        for (int status = 0; status < rejectedByStatus.length(); status++) {
+            long count = rejectedByStatus.get(status);
+            if (count > 0) {
+                out.append(rejected).append("{status=\"").append(status).append("\"} ").append(count).append('\n');
+            }
+        }
+
+        counter(out, "deliveries_failed_total", "Webhook requests that failed while being handled", failedDeliveries.sum());
+
+        String runs = PREFIX + "triggers_total";
+        out.append("# HELP ").append(runs).append(" Trigger runs finished, by outcome\n");
+        out.append("# TYPE ").append(runs).append(" counter\n");
+        for (Outcome outcome : Outcome.values()) {
+            out.append(runs).append("{outcome=\"").append(outcome.label).append("\"} ")
+                    .append(triggers[outcome.ordinal()].sum()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
@@ -0,0 +1,68 @@
+package dev.mave.gitupdatelistener.plugin.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * Routes pushes matching a repository and ref pattern to a run configuration in a project.
+ * Persisted as part of {@link TriggerSettings}.
+ */
+public class TriggerRule {
+    /** The repository as "owner/name", or empty for any repository */
+    public String repository = "";
+    /** A branch name, a full ref, or a glob over either, e.g. "main", "release/*" or "refs/tags/**" */
+    public String refPattern = "";
+    /** The project to restart in, or empty for the first open project */
+    public String projectName = "";
+    public String configName = "";
+    /** Comma-separated path globs, a push restarts only if it changed a matching path. Empty for any path. */
+    public String includePaths = "";
+    /** Comma-separated path globs, changes to matching paths alone don't restart */
+    public String excludePaths = "";
+    /** Still pull pushes the path globs filter out, without restarting */
+    public boolean pullFilteredPushes = false;
+
+    public TriggerRule() {
+    }
+
+    public TriggerRule(String repository, String refPattern, String projectName, String configName) {
+        this.repository = repository;
+        this.refPattern = refPattern;
+        this.projectName = projectName;
+        this.configName = configName;
+    }
+
+    @NotNull
+    public TriggerRule copy() {
+        TriggerRule copy = new TriggerRule(repository, refPattern, projectName, configName);
+        copy.includePaths = includePaths;
+        copy.excludePaths = excludePaths;
+        copy.pullFilteredPushes = pullFilteredPushes;
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TriggerRule)) return false;
+        TriggerRule other = (TriggerRule) o;
+        return Objects.equals(repository, other.repository)
+                && Objects.equals(refPattern, other.refPattern)
+                && Objects.equals(projectName, other.projectName)
+                && Objects.equals(configName, other.configName)
+                && Objects.equals(includePaths, other.includePaths)
+                && Objects.equals(excludePaths, other.excludePaths)
+                && pullFilteredPushes == other.pullFilteredPushes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(repository, refPattern, projectName, configName, includePaths, excludePaths, pullFilteredPushes);
+    }
+
+    @Override
+    public String toString() {
+        return repository + ":" + refPattern + " -> " + projectName + "/" + configName;
+    }
+}
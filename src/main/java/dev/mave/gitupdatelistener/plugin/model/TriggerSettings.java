@@ -1,25 +1,111 @@
 package dev.mave.gitupdatelistener.plugin.model;
 
+import com.intellij.credentialStore.CredentialAttributes;
+import com.intellij.credentialStore.CredentialAttributesKt;
+import com.intellij.ide.passwordSafe.PasswordSafe;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.*;
 import com.intellij.util.xmlb.XmlSerializerUtil;
+import com.intellij.util.xmlb.annotations.Transient;
+import com.intellij.util.xmlb.annotations.XCollection;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @State(
         name = "dev.mave.gitupdatelistener.plugin.model.TriggerSettings",
         storages = @Storage("GitUpdateListenerSettings.xml")
 )
 public class TriggerSettings implements PersistentStateComponent<TriggerSettings> {
+    /** The webhook secret lives in the IDE's password safe rather than in the settings file */
+    private static final CredentialAttributes WEBHOOK_SECRET = new CredentialAttributes(
+            CredentialAttributesKt.generateServiceName("Git Update Listener", "Webhook Secret"));
+
     public String targetConfigName = "runProduction";
     public String targetBranch = "beta";
+    /** Routes pushes to run configurations. When empty, targetBranch and targetConfigName act as the only rule. */
+    @XCollection(style = XCollection.Style.v2)
+    public List<TriggerRule> rules = new ArrayList<>();
     public int listenPort = 12345;
+    /** The interface to listen on, "0.0.0.0" for all of them */
+    public String bindAddress = "0.0.0.0";
+    /** Connections the OS queues while every worker is busy */
+    public int listenBacklog = 50;
+    /** Allow binding the port while connections to a previous listener linger in TIME_WAIT */
+    public boolean reuseAddress = true;
+    /** Let other IDE instances on this host with the same port receive their pushes through whichever one holds it */
+    public boolean shareListener = false;
     public String discordWebhookUrl = "";
+    /** Maximum number of webhook connections handled at the same time */
+    public int maxConnections = 16;
+    /** Larger request bodies are refused with 413. GitHub never sends more than 25 MB. */
+    public int maxBodySizeMb = 25;
+    /** Larger request headers are refused with 431 */
+    public int maxHeaderSizeKb = 16;
+    /** A request's headers must arrive within this many seconds of its first byte, 0 for no limit */
+    public int headerTimeoutSeconds = 10;
+    /** A request's body must arrive within this many seconds after its headers, 0 for no limit */
+    public int bodyTimeoutSeconds = 60;
+    /** Requests accepted per minute from one address before answering 429, 0 for no limit */
+    public int rateLimitPerMinute = 60;
+    /** Stream request bodies into direct buffers instead of heap buffers */
+    public boolean directBodyBuffers = false;
+    /** Pushes for the same run configuration within this many milliseconds collapse into one rerun */
+    public int coalesceWindowMs = 3000;
+    /** Build while the old process still runs and only stop it once the build succeeds */
+    public boolean buildBeforeStop = false;
+
+    /** The webhook secret once read from the password safe, which may be slow to ask */
+    private volatile String webhookSecret;
 
     public static TriggerSettings getInstance() {
         return ApplicationManager.getApplication().getService(TriggerSettings.class);
     }
 
+    /**
+     * The configured rules, or the single default rule built from targetBranch and targetConfigName
+     */
+    @Transient
+    public List<TriggerRule> getEffectiveRules() {
+        if (!rules.isEmpty()) {
+            return rules;
+        }
+        return List.of(new TriggerRule("", targetBranch, "", targetConfigName));
+    }
+
+    @Transient
+    public int getMaxBodySizeBytes() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBodySizeMb) * 1024L * 1024L);
+    }
+
+    /**
+     * The secret GitHub signs deliveries with, or an empty string to accept unsigned deliveries
+     */
+    @Transient
+    @NotNull
+    public String getWebhookSecret() {
+        String secret = webhookSecret;
+        if (secret == null) {
+            String stored = PasswordSafe.getInstance().getPassword(WEBHOOK_SECRET);
+            secret = stored != null ? stored : "";
+            webhookSecret = secret;
+        }
+        return secret;
+    }
+
+    @Transient
+    public void setWebhookSecret(@NotNull String secret) {
+        PasswordSafe.getInstance().setPassword(WEBHOOK_SECRET, secret.isEmpty() ? null : secret);
+        webhookSecret = secret;
+    }
+
+    @Transient
+    public int getMaxHeaderSizeBytes() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxHeaderSizeKb) * 1024L);
+    }
+
     @Nullable
     @Override
     public TriggerSettings getState() {
@@ -3,25 +3,53 @@ package dev.mave.gitupdatelistener.plugin.model;
 import com.intellij.execution.RunManager;
 import com.intellij.execution.RunnerAndConfigurationSettings;
 import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.options.ConfigurationException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.ui.ComboBox;
+import com.intellij.ui.ToolbarDecorator;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBPasswordField;
 import com.intellij.ui.components.JBTextField;
+import com.intellij.ui.table.TableView;
+import com.intellij.util.ui.ColumnInfo;
 import com.intellij.util.ui.FormBuilder;
+import com.intellij.util.ui.ListTableModel;
+import dev.mave.gitupdatelistener.plugin.TriggerService;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class TriggerSettingsConfigurable implements Configurable {
+    private static final int MAX_PORT = 65535;
+
     private JBTextField branchField;
     private JBTextField portField;
+    private JBTextField bindAddressField;
+    private JBTextField backlogField;
+    private JBCheckBox reuseAddressCheckBox;
+    private JBCheckBox shareListenerCheckBox;
+    private JBPasswordField webhookSecretField;
     private JBTextField discordWebhookField;
+    private JBTextField coalesceWindowField;
+    private JBTextField maxConnectionsField;
+    private JBTextField maxBodySizeField;
+    private JBTextField maxHeaderSizeField;
+    private JBTextField headerTimeoutField;
+    private JBTextField bodyTimeoutField;
+    private JBTextField rateLimitField;
+    private JBCheckBox directBuffersCheckBox;
+    private JBCheckBox buildBeforeStopCheckBox;
     private ComboBox<String> configComboBox;
+    private ListTableModel<TriggerRule> rulesModel;
 
     @Nls(capitalization = Nls.Capitalization.Title)
     @Override
@@ -36,7 +64,23 @@ public class TriggerSettingsConfigurable implements Configurable {
 
         branchField = new JBTextField(settings.targetBranch);
         portField = new JBTextField(Integer.toString(settings.listenPort));
+        bindAddressField = new JBTextField(settings.bindAddress);
+        backlogField = new JBTextField(Integer.toString(settings.listenBacklog));
+        reuseAddressCheckBox = new JBCheckBox("Reuse the address while old connections linger (SO_REUSEADDR)", settings.reuseAddress);
+        shareListenerCheckBox = new JBCheckBox("Share the port with other IDE instances on this machine", settings.shareListener);
+        shareListenerCheckBox.setToolTipText("The instance that holds the port forwards pushes to the others, and one of them takes over when it exits");
+        webhookSecretField = new JBPasswordField();
+        webhookSecretField.setText(settings.getWebhookSecret());
         discordWebhookField = new JBTextField(settings.discordWebhookUrl);
+        coalesceWindowField = new JBTextField(Integer.toString(settings.coalesceWindowMs));
+        maxConnectionsField = new JBTextField(Integer.toString(settings.maxConnections));
+        maxBodySizeField = new JBTextField(Integer.toString(settings.maxBodySizeMb));
+        maxHeaderSizeField = new JBTextField(Integer.toString(settings.maxHeaderSizeKb));
+        headerTimeoutField = new JBTextField(Integer.toString(settings.headerTimeoutSeconds));
+        bodyTimeoutField = new JBTextField(Integer.toString(settings.bodyTimeoutSeconds));
+        rateLimitField = new JBTextField(Integer.toString(settings.rateLimitPerMinute));
+        directBuffersCheckBox = new JBCheckBox("Stream request bodies into direct (off-heap) buffers", settings.directBodyBuffers);
+        buildBeforeStopCheckBox = new JBCheckBox("Build before stopping the running process (keeps it running if the build fails)", settings.buildBeforeStop);
         configComboBox = new ComboBox<>();
 
         Project[] projects = ProjectManager.getInstance().getOpenProjects();
@@ -50,47 +94,193 @@ public class TriggerSettingsConfigurable implements Configurable {
             configComboBox.setSelectedItem(settings.targetConfigName);
         }
 
+        rulesModel = new ListTableModel<>(
+                ruleColumn("Repository (owner/name)", rule -> rule.repository, (rule, value) -> rule.repository = value),
+                ruleColumn("Branch or Ref Pattern", rule -> rule.refPattern, (rule, value) -> rule.refPattern = value),
+                ruleColumn("Project", rule -> rule.projectName, (rule, value) -> rule.projectName = value),
+                ruleColumn("Run Configuration", rule -> rule.configName, (rule, value) -> rule.configName = value),
+                ruleColumn("Only Paths", rule -> rule.includePaths, (rule, value) -> rule.includePaths = value),
+                ruleColumn("Except Paths", rule -> rule.excludePaths, (rule, value) -> rule.excludePaths = value),
+                ruleFlagColumn("Pull Other Pushes", rule -> rule.pullFilteredPushes, (rule, value) -> rule.pullFilteredPushes = value));
+        rulesModel.setItems(copyRules(settings.rules));
+        TableView<TriggerRule> rulesTable = new TableView<>(rulesModel);
+        rulesTable.getEmptyText().setText("No rules: the run configuration and branch above are used");
+        JPanel rulesPanel = ToolbarDecorator.createDecorator(rulesTable)
+                .setAddAction(button -> rulesModel.addRow(new TriggerRule()))
+                .createPanel();
+
         return FormBuilder.createFormBuilder()
                 .addLabeledComponent(new JBLabel("Run Configuration:"), configComboBox)
                 .addLabeledComponent(new JBLabel("Target Branch:"), branchField)
+                .addLabeledComponent(new JBLabel("Trigger Rules:"), rulesPanel, true)
+                .addTooltip("Paths are comma-separated globs such as src/**, *.md or docs/. Pushes changing none of them don't restart, \"Pull Other Pushes\" still pulls them.")
                 .addLabeledComponent(new JBLabel("Listen Port:"), portField)
+                .addLabeledComponent(new JBLabel("Bind Address:"), bindAddressField)
+                .addTooltip("0.0.0.0 listens on every interface, 127.0.0.1 only locally, e.g. behind a tunnel")
+                .addLabeledComponent(new JBLabel("Connection Backlog:"), backlogField)
+                .addComponent(reuseAddressCheckBox)
+                .addComponent(shareListenerCheckBox)
+                .addLabeledComponent(new JBLabel("Webhook Secret:"), webhookSecretField)
+                .addTooltip("Deliveries without a valid X-Hub-Signature-256 are refused. Leave empty to accept unsigned deliveries.")
+                .addLabeledComponent(new JBLabel("Coalesce Pushes Within (ms):"), coalesceWindowField)
+                .addComponent(buildBeforeStopCheckBox)
+                .addLabeledComponent(new JBLabel("Max Concurrent Connections:"), maxConnectionsField)
+                .addLabeledComponent(new JBLabel("Max Request Body Size (MB):"), maxBodySizeField)
+                .addLabeledComponent(new JBLabel("Max Request Header Size (KB):"), maxHeaderSizeField)
+                .addLabeledComponent(new JBLabel("Header Read Timeout (s):"), headerTimeoutField)
+                .addLabeledComponent(new JBLabel("Body Read Timeout (s):"), bodyTimeoutField)
+                .addLabeledComponent(new JBLabel("Max Requests per Minute per Address:"), rateLimitField)
+                .addTooltip("0 turns the limit off")
+                .addComponent(directBuffersCheckBox)
                 .addLabeledComponent(new JBLabel("Discord Webhook URL (Optional):"), discordWebhookField)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
     }
 
+    private static ColumnInfo<TriggerRule, String> ruleColumn(String name,
+                                                              Function<TriggerRule, String> getter,
+                                                              BiConsumer<TriggerRule, String> setter) {
+        return new ColumnInfo<>(name) {
+            @Nullable
+            @Override
+            public String valueOf(TriggerRule rule) {
+                return getter.apply(rule);
+            }
+
+            @Override
+            public boolean isCellEditable(TriggerRule rule) {
+                return true;
+            }
+
+            @Override
+            public void setValue(TriggerRule rule, String value) {
+                setter.accept(rule, value == null ? "" : value.trim());
+            }
+        };
+    }
+
+    private static ColumnInfo<TriggerRule, Boolean> ruleFlagColumn(String name,
+                                                                   Function<TriggerRule, Boolean> getter,
+                                                                   BiConsumer<TriggerRule, Boolean> setter) {
+        return new ColumnInfo<>(name) {
+            @Nullable
+            @Override
+            public Boolean valueOf(TriggerRule rule) {
+                return getter.apply(rule);
+            }
+
+            @Override
+            public Class<?> getColumnClass() {
+                return Boolean.class;
+            }
+
+            @Override
+            public boolean isCellEditable(TriggerRule rule) {
+                return true;
+            }
+
+            @Override
+            public void setValue(TriggerRule rule, Boolean value) {
+                setter.accept(rule, Boolean.TRUE.equals(value));
+            }
+        };
+    }
+
+    private static List<TriggerRule> copyRules(List<TriggerRule> rules) {
+        List<TriggerRule> copies = new ArrayList<>(rules.size());
+        for (TriggerRule rule : rules) {
+            copies.add(rule.copy());
+        }
+        return copies;
+    }
+
     @Override
     public boolean isModified() {
         TriggerSettings settings = TriggerSettings.getInstance();
         boolean modified = false;
+        modified |= !settings.rules.equals(rulesModel.getItems());
 
         if (configComboBox.getSelectedItem() != null) {
             modified |= !settings.targetConfigName.equals(configComboBox.getSelectedItem());
         }
         modified |= !settings.targetBranch.equals(branchField.getText());
         modified |= !Objects.equals(settings.discordWebhookUrl, discordWebhookField.getText());
-
-        try {
-            int port = Integer.parseInt(portField.getText());
-            modified |= settings.listenPort != port;
-        } catch (NumberFormatException e) {
-            modified = true;
-        }
+        modified |= !settings.bindAddress.equals(bindAddressField.getText().trim());
+        modified |= isModified(backlogField, settings.listenBacklog);
+        modified |= settings.reuseAddress != reuseAddressCheckBox.isSelected();
+        modified |= settings.shareListener != shareListenerCheckBox.isSelected();
+        modified |= !settings.getWebhookSecret().equals(new String(webhookSecretField.getPassword()));
+        modified |= isModified(portField, settings.listenPort);
+        modified |= isModified(coalesceWindowField, settings.coalesceWindowMs);
+        modified |= isModified(maxConnectionsField, settings.maxConnections);
+        modified |= isModified(maxBodySizeField, settings.maxBodySizeMb);
+        modified |= isModified(maxHeaderSizeField, settings.maxHeaderSizeKb);
+        modified |= isModified(headerTimeoutField, settings.headerTimeoutSeconds);
+        modified |= isModified(bodyTimeoutField, settings.bodyTimeoutSeconds);
+        modified |= isModified(rateLimitField, settings.rateLimitPerMinute);
+        modified |= settings.directBodyBuffers != directBuffersCheckBox.isSelected();
+        modified |= settings.buildBeforeStop != buildBeforeStopCheckBox.isSelected();
 
         return modified;
     }
 
     @Override
-    public void apply() {
+    public void apply() throws ConfigurationException {
         TriggerSettings settings = TriggerSettings.getInstance();
+        // Checked before anything is saved, so a bad port leaves every setting as it was
+        int listenPort = parseInt(portField, "Listen port", 0, MAX_PORT, settings.listenPort);
         if (configComboBox.getSelectedItem() != null) {
             settings.targetConfigName = (String) configComboBox.getSelectedItem();
         }
         settings.targetBranch = branchField.getText();
+        settings.rules = copyRules(rulesModel.getItems());
         settings.discordWebhookUrl = discordWebhookField.getText();
+        String webhookSecret = new String(webhookSecretField.getPassword());
+        if (!webhookSecret.equals(settings.getWebhookSecret())) {
+            settings.setWebhookSecret(webhookSecret);
+        }
+        // Restored if the listener can't move, so the saved settings keep describing the one that runs
+        int previousPort = settings.listenPort;
+        String previousBindAddress = settings.bindAddress;
+        int previousBacklog = settings.listenBacklog;
+        boolean previousReuseAddress = settings.reuseAddress;
+        boolean previousShareListener = settings.shareListener;
+        int previousMaxConnections = settings.maxConnections;
+        settings.listenPort = listenPort;
+        settings.coalesceWindowMs = parseInt(coalesceWindowField, 0, settings.coalesceWindowMs);
+        settings.maxConnections = parseInt(maxConnectionsField, 1, settings.maxConnections);
+        settings.maxBodySizeMb = parseInt(maxBodySizeField, 1, settings.maxBodySizeMb);
+        String bindAddress = bindAddressField.getText().trim();
+        settings.bindAddress = bindAddress.isEmpty() ? "0.0.0.0" : bindAddress;
+        settings.listenBacklog = parseInt(backlogField, 1, settings.listenBacklog);
+        settings.reuseAddress = reuseAddressCheckBox.isSelected();
+        settings.shareListener = shareListenerCheckBox.isSelected();
+        settings.maxHeaderSizeKb = parseInt(maxHeaderSizeField, 1, settings.maxHeaderSizeKb);
+        settings.headerTimeoutSeconds = parseInt(headerTimeoutField, 0, settings.headerTimeoutSeconds);
+        settings.bodyTimeoutSeconds = parseInt(bodyTimeoutField, 0, settings.bodyTimeoutSeconds);
+        settings.rateLimitPerMinute = parseInt(rateLimitField, 0, settings.rateLimitPerMinute);
+        settings.directBodyBuffers = directBuffersCheckBox.isSelected();
+        settings.buildBeforeStop = buildBeforeStopCheckBox.isSelected();
+
         try {
-            settings.listenPort = Integer.parseInt(portField.getText());
-        } catch (NumberFormatException ignored) { }
+            TriggerService.getInstance().applyListenerSettings();
+        } catch (IOException | IllegalArgumentException e) {
+            String rejected = settings.bindAddress + ":" + settings.listenPort;
+            settings.listenPort = previousPort;
+            settings.bindAddress = previousBindAddress;
+            settings.listenBacklog = previousBacklog;
+            settings.reuseAddress = previousReuseAddress;
+            settings.shareListener = previousShareListener;
+            settings.maxConnections = previousMaxConnections;
+            try {
+                // Nothing to do unless the failed move already let go of the previous listener, e.g. a follower
+                TriggerService.getInstance().applyListenerSettings();
+            } catch (IOException | IllegalArgumentException restoreFailure) {
+                e.addSuppressed(restoreFailure);
+            }
+            throw new ConfigurationException("Can't listen on " + rejected + ": " + e.getMessage()
+                    + ". The listener keeps running with its previous settings.");
+        }
     }
 
     @Override
@@ -98,7 +288,59 @@ public class TriggerSettingsConfigurable implements Configurable {
         TriggerSettings settings = TriggerSettings.getInstance();
         configComboBox.setSelectedItem(settings.targetConfigName);
         branchField.setText(settings.targetBranch);
+        rulesModel.setItems(copyRules(settings.rules));
         portField.setText(Integer.toString(settings.listenPort));
+        bindAddressField.setText(settings.bindAddress);
+        backlogField.setText(Integer.toString(settings.listenBacklog));
+        reuseAddressCheckBox.setSelected(settings.reuseAddress);
+        shareListenerCheckBox.setSelected(settings.shareListener);
         discordWebhookField.setText(settings.discordWebhookUrl);
+        webhookSecretField.setText(settings.getWebhookSecret());
+        coalesceWindowField.setText(Integer.toString(settings.coalesceWindowMs));
+        maxConnectionsField.setText(Integer.toString(settings.maxConnections));
+        maxBodySizeField.setText(Integer.toString(settings.maxBodySizeMb));
+        maxHeaderSizeField.setText(Integer.toString(settings.maxHeaderSizeKb));
+        headerTimeoutField.setText(Integer.toString(settings.headerTimeoutSeconds));
+        bodyTimeoutField.setText(Integer.toString(settings.bodyTimeoutSeconds));
+        rateLimitField.setText(Integer.toString(settings.rateLimitPerMinute));
+        directBuffersCheckBox.setSelected(settings.directBodyBuffers);
+        buildBeforeStopCheckBox.setSelected(settings.buildBeforeStop);
+    }
+
+    private static boolean isModified(JBTextField field, int value) {
+        try {
+            return Integer.parseInt(field.getText()) != value;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * The field's number, at least min, or the current value if the field doesn't hold a number
+     */
+    private static int parseInt(JBTextField field, int min, int current) {
+        try {
+            return Math.max(min, Integer.parseInt(field.getText()));
+        } catch (NumberFormatException e) {
+            return current;
+        }
+    }
+
+    /**
+     * The field's number, or the current value if the field doesn't hold a number
+     *
+     * @throws ConfigurationException if the number is outside min..max
+     */
+    private static int parseInt(JBTextField field, String name, int min, int max, int current) throws ConfigurationException {
+        int value;
+        try {
+            value = Integer.parseInt(field.getText().trim());
+        } catch (NumberFormatException e) {
+            return current;
+        }
+        if (value < min || value > max) {
+            throw new ConfigurationException(name + " must be between " + min + " and " + max + ", not " + value);
+        }
+        return value;
     }
 }
\ No newline at end of file
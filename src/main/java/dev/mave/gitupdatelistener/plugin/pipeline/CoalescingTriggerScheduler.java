@@ -0,0 +1,148 @@
+package dev.mave.gitupdatelistener.plugin.pipeline;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Collapses bursts of pushes into a single rerun per {@link TriggerKey}.
+ * <p>
+ * A run only starts once no newer push for its key has arrived for the quiet window. A push that
+ * arrives while a run for the same key is in progress cancels the obsolete run at its next stage
+ * boundary, and the newest push runs once the old one has wound down. Redeliveries of a commit
+ * that is already pending or running are dropped. A push that only needs pulling never cancels or
+ * replaces a restart, since the restart pulls as well.
+ * <p>
+ * At most one run per key waits and one runs, so the queue is bounded by the number of keys, which
+ * come from the configured rules rather than from the pushes.
+ */
+public final class CoalescingTriggerScheduler {
+    private static final Logger LOG = Logger.getInstance(CoalescingTriggerScheduler.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final IntSupplier quietWindowMs;
+    private final Function<TriggerRun, CompletableFuture<Void>> starter;
+    private final Map<TriggerKey, Slot> slots = new HashMap<>();
+
+    /**
+     * @param quietWindowMs read on every push, so setting changes apply immediately
+     * @param starter starts a run and returns its completion
+     */
+    public CoalescingTriggerScheduler(@NotNull ScheduledExecutorService scheduler,
+                                      @NotNull IntSupplier quietWindowMs,
+                                      @NotNull Function<TriggerRun, CompletableFuture<Void>> starter) {
+        this.scheduler = scheduler;
+        this.quietWindowMs = quietWindowMs;
+        this.starter = starter;
+    }
+
+    /**
+     * Schedule a run, superseding anything still pending or running for the same key
+     */
+    public synchronized void submit(@NotNull TriggerRun run) {
+        Slot slot = slots.computeIfAbsent(run.getKey(), k -> new Slot());
+
+        String commitId = run.getEvent().getHeadCommitId();
+        if (commitId != null && (isCommit(slot.pending, commitId)
+                || (slot.running != null && !slot.running.isCancelled() && isCommit(slot.running, commitId)))) {
+            LOG.info("Ignoring redelivery of commit " + commitId + " already scheduled for " + run.getKey());
+            return;
+        }
+
+        if (run.isPullOnly() && slot.pending != null) {
+            LOG.info("Pull of commit " + commitId + " is covered by the trigger already pending for " + run.getKey());
+            return;
+        }
+        if (slot.pending != null) {
+            LOG.info("Superseding pending trigger for " + run.getKey() + " with commit " + commitId);
+            run.absorb(slot.pending);
+        }
+        slot.pending = run;
+        if (!run.isPullOnly() && slot.running != null && !Objects.equals(commitId, slot.running.getEvent().getHeadCommitId())) {
+            LOG.info("Cancelling obsolete trigger run for " + run.getKey());
+            slot.running.cancel();
+            run.absorb(slot.running);
+        }
+
+        if (slot.timer != null) {
+            slot.timer.cancel(false);
+        }
+        int window = Math.max(0, quietWindowMs.getAsInt());
+        long generation = ++slot.timerGeneration;
+        slot.timer = scheduler.schedule(() -> onQuietWindowElapsed(run.getKey(), slot, generation), window, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isCommit(TriggerRun run, String commitId) {
+        return run != null && commitId.equals(run.getEvent().getHeadCommitId());
+    }
+
+    private synchronized void onQuietWindowElapsed(TriggerKey key, Slot slot, long generation) {
+        if (slot.timerGeneration != generation) {
+            // A newer push restarted the window after this timer had already fired
+            return;
+        }
+        slot.timer = null;
+        if (slot.running == null) {
+            startPending(key, slot);
+        }
+        // Otherwise the running run starts the pending one when it finishes
+    }
+
+    private void startPending(TriggerKey key, Slot slot) {
+        TriggerRun run = slot.pending;
+        if (run == null) {
+            slots.remove(key);
+            return;
+        }
+        slot.pending = null;
+        slot.running = run;
+
+        CompletableFuture<Void> completion;
+        try {
+            completion = starter.apply(run);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to start trigger run for " + key, e);
+            completion = CompletableFuture.completedFuture(null);
+        }
+        completion.whenComplete((v, e) -> onRunFinished(key, slot, run));
+    }
+
+    private synchronized void onRunFinished(TriggerKey key, Slot slot, TriggerRun run) {
+        if (slot.running != run) {
+            return;
+        }
+        slot.running = null;
+        if (slot.timer == null) {
+            startPending(key, slot);
+        }
+    }
+
+    /**
+     * Drop everything still waiting and cancel what is running
+     */
+    public synchronized void cancelAll() {
+        for (Slot slot : slots.values()) {
+            slot.timerGeneration++;
+            if (slot.timer != null) slot.timer.cancel(false);
+            if (slot.running != null) slot.running.cancel();
+            slot.pending = null;
+        }
+        slots.clear();
+    }
+
+    private static final class Slot {
+        ScheduledFuture<?> timer;
+        long timerGeneration;
+        TriggerRun pending;
+        TriggerRun running;
+    }
+}
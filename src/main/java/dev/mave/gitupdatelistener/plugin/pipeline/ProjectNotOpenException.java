@@ -0,0 +1,10 @@
+package dev.mave.gitupdatelistener.plugin.pipeline;
+
+/**
+ * Thrown by the match stage when the project a run targets isn't open, so the run can wait for it
+ */
+public class ProjectNotOpenException extends IllegalStateException {
+    public ProjectNotOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,51 @@
+package dev.mave.gitupdatelistener.plugin.pipeline;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * Identifies what a trigger restarts: a run configuration in a project. Runs with the same key
+ * are coalesced, runs with different keys are independent.
+ */
+public final class TriggerKey {
+    private final String projectName;
+    private final String configName;
+
+    /**
+     * @param projectName the project to restart in, or null for the first open project
+     */
+    public TriggerKey(@Nullable String projectName, @NotNull String configName) {
+        this.projectName = projectName;
+        this.configName = configName;
+    }
+
+    @Nullable
+    public String getProjectName() {
+        return projectName;
+    }
+
+    @NotNull
+    public String getConfigName() {
+        return configName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TriggerKey)) return false;
+        TriggerKey other = (TriggerKey) o;
+        return Objects.equals(projectName, other.projectName) && configName.equals(other.configName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(projectName, configName);
+    }
+
+    @Override
+    public String toString() {
+        return (projectName != null ? projectName : "<first open project>") + "/" + configName;
+    }
+}
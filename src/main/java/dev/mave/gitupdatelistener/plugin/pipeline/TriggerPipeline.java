@@ -0,0 +1,501 @@
+package dev.mave.gitupdatelistener.plugin.pipeline;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.RunnerAndConfigurationSettings;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.executors.DefaultRunExecutor;
+import com.intellij.execution.process.CapturingProcessAdapter;
+import com.intellij.execution.process.OSProcessHandler;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.runners.ExecutionUtil;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.task.ProjectTaskManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import dev.mave.gitupdatelistener.plugin.execution.RunProcessIndex;
+import dev.mave.gitupdatelistener.plugin.git.GitSync;
+import dev.mave.gitupdatelistener.plugin.metrics.TriggerMetrics;
+import dev.mave.gitupdatelistener.plugin.toolwindow.GitUpdateConsole;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Carries a matched push through match → sync → stop → start → notify on background threads.
+ * <p>
+ * Every stage has its own timeout. A stage that outlives it is interrupted, which kills its git process
+ * and ends a wait for another run's pull, and a start still queued for the EDT is dropped. Git output
+ * is streamed into the project's {@link GitUpdateConsole} as it arrives, and only the final
+ * {@code ExecutionUtil.runConfiguration} call touches the EDT.
+ * <p>
+ * With build before stop enabled, a build stage runs between sync and stop while the old process is
+ * still serving. The old process is only stopped once the build succeeds, so the configuration's own
+ * before-run build finds everything up to date and the service is down for little more than its startup.
+ * <p>
+ * A run ends after sync when it only pulls, or when its rule's path globs had to wait for {@code git diff}
+ * and filter out everything the pull brought in.
+ */
+public final class TriggerPipeline {
+    private static final Logger LOG = Logger.getInstance(TriggerPipeline.class);
+
+    /** Git and process work: blocking, so kept off the shared pool's hot threads. Runs for independent rules proceed in parallel. */
+    private final Executor syncExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Git Update Listener Sync", 4);
+    /** Outgoing notifications: must never hold up a restart */
+    private final Executor notifyExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Git Update Listener Notify", 1);
+
+    private final BooleanSupplier buildBeforeStop;
+    private final Consumer<TriggerRun> notifier;
+    private final TriggerMetrics metrics;
+    /** Held while a run pulls into a working tree, by its path. Waiting can be interrupted when the stage times out. */
+    private final Map<String, ReentrantLock> syncLocks = new ConcurrentHashMap<>();
+    private final GitSync gitSync = new GitSync();
+
+    /**
+     * @param buildBeforeStop read at the start of each run, whether to build before stopping the old process
+     * @param notifier        called on a background thread once the configuration has been restarted
+     * @param metrics         receives stage latencies and run outcomes
+     */
+    public TriggerPipeline(@NotNull BooleanSupplier buildBeforeStop, @NotNull Consumer<TriggerRun> notifier,
+                           @NotNull TriggerMetrics metrics) {
+        this.buildBeforeStop = buildBeforeStop;
+        this.notifier = notifier;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start a run through the pipeline
+     *
+     * @return completes when the run has finished, been cancelled or failed a required stage
+     */
+    @NotNull
+    public CompletableFuture<Void> start(@NotNull TriggerRun run) {
+        boolean buildFirst = buildBeforeStop.getAsBoolean();
+        CompletableFuture<Void> sync = stage(run, TriggerStage.MATCH, null, syncExecutor, () -> match(run))
+                .thenCompose(v -> stage(run, TriggerStage.SYNC, TriggerMetrics.Stage.SYNC, syncExecutor, () -> syncGit(run)));
+        // Pulling is all a pull-only run does, so there a failed pull fails the run
+        CompletableFuture<Void> synced = run.isPullOnly() ? sync : continueOnFailure(run, TriggerStage.SYNC, sync);
+        return synced
+                .thenCompose(v -> run.isRestartSkipped() ? CompletableFuture.<Void>completedFuture(null) : restart(run, buildFirst))
+                .whenComplete((v, e) -> {
+                    Throwable cause = unwrap(e);
+                    if (cause instanceof CancellationException) {
+                        LOG.info("Trigger run for '" + run.getTargetConfigName() + "' was cancelled");
+                        metrics.triggerFinished(TriggerMetrics.Outcome.CANCELLED);
+                    } else if (cause != null) {
+                        LOG.warn("Trigger run for '" + run.getTargetConfigName() + "' failed: " + cause.getMessage());
+                        metrics.triggerFinished(TriggerMetrics.Outcome.FAILED);
+                    } else if (run.isRestartSkipped()) {
+                        metrics.triggerFinished(TriggerMetrics.Outcome.PULLED_ONLY);
+                    } else {
+                        metrics.triggerFinished(TriggerMetrics.Outcome.SUCCEEDED);
+                    }
+                });
+    }
+
+    /**
+     * The stages after sync: replace the running process and announce it
+     */
+    private CompletableFuture<Void> restart(TriggerRun run, boolean buildFirst) {
+        // A failed build is not optional: the old process keeps running rather than being replaced by a broken one
+        CompletableFuture<Void> built = buildFirst ? buildWhileRunning(run) : CompletableFuture.completedFuture(null);
+        return built
+                .thenCompose(v -> continueOnFailure(run, TriggerStage.STOP,
+                        stage(run, TriggerStage.STOP, TriggerMetrics.Stage.STOP, syncExecutor, () -> stopRunningProcesses(run))))
+                .thenCompose(v -> startOnEdt(run))
+                // Notifying only queues the message, the Discord notifier records how long posting takes
+                .thenCompose(v -> stage(run, TriggerStage.NOTIFY, null, notifyExecutor, () -> notifier.accept(run)));
+    }
+
+    /**
+     * Run one stage on the given executor, failing it if it outlives the stage timeout
+     *
+     * @param metric the histogram to record the stage's latency in, or null not to record it
+     */
+    private CompletableFuture<Void> stage(TriggerRun run, TriggerStage stage, @Nullable TriggerMetrics.Stage metric,
+                                          Executor executor, StageAction action) {
+        long startNanos = System.nanoTime();
+        StageThread stageThread = new StageThread();
+        return CompletableFuture.runAsync(() -> {
+                    if (!stageThread.enter()) {
+                        return;
+                    }
+                    try {
+                        run.checkNotCancelled();
+                        action.run();
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        stageThread.exit();
+                    }
+                }, executor)
+                .orTimeout(stage.getTimeoutMs(), TimeUnit.MILLISECONDS)
+                .whenComplete((v, e) -> {
+                    if (unwrap(e) instanceof TimeoutException) {
+                        // The stage thread may still be waiting for the sync lock or a process, so stop both
+                        stageThread.timeOut();
+                        run.destroyActiveProcess();
+                    }
+                    long tookNanos = System.nanoTime() - startNanos;
+                    if (metric != null) {
+                        metrics.record(metric, tookNanos);
+                    }
+                    LOG.debug("Stage " + stage + " took " + TimeUnit.NANOSECONDS.toMillis(tookNanos) + " ms");
+                });
+    }
+
+    /**
+     * Let the run go on after a failed optional stage, unless it was cancelled
+     */
+    private static CompletableFuture<Void> continueOnFailure(TriggerRun run, TriggerStage stage, CompletableFuture<Void> future) {
+        return future.exceptionally(e -> {
+            Throwable cause = unwrap(e);
+            if (cause instanceof CancellationException || run.isCancelled()) {
+                throw new CompletionException(cause);
+            }
+            LOG.warn("Stage " + stage + " failed, continuing with the restart", cause);
+            return null;
+        });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private void match(TriggerRun run) {
+        String projectName = run.getKey().getProjectName();
+        Project project = null;
+        for (Project candidate : ProjectManager.getInstance().getOpenProjects()) {
+            if (!candidate.isDisposed() && (projectName == null || projectName.equals(candidate.getName()))) {
+                project = candidate;
+                break;
+            }
+        }
+        if (project == null) {
+            throw new ProjectNotOpenException(projectName == null
+                    ? "No open projects found. Aborting rerun."
+                    : "Project '" + projectName + "' is not open. Aborting rerun.");
+        }
+
+        RunnerAndConfigurationSettings configuration = RunProcessIndex.getInstance(project).findConfiguration(run.getTargetConfigName());
+        if (configuration == null) {
+            throw new IllegalStateException("Run Configuration '" + run.getTargetConfigName() + "' not found in project: " + project.getName());
+        }
+
+        run.setProject(project);
+        run.setConfiguration(configuration);
+    }
+
+    private void syncGit(TriggerRun run) throws ExecutionException, InterruptedException {
+        Project project = run.getProject();
+        String projectPath = project.getBasePath();
+        if (projectPath == null) {
+            LOG.warn("Project base path is null. Skipping Git pull.");
+            return;
+        }
+
+        // Rules for different configurations in one project share a working tree, and git doesn't allow two pulls at once
+        ReentrantLock syncLock = syncLocks.computeIfAbsent(projectPath, k -> new ReentrantLock());
+        syncLock.lockInterruptibly();
+        try {
+            run.checkNotCancelled();
+            GitUpdateConsole console = GitUpdateConsole.getInstance(project);
+            GitSync.CommandRunner git = gitRunner(run, console);
+            if (pull(run, project, projectPath, git) && run.getPathFilter() != null) {
+                checkChangedPaths(run, console, Path.of(projectPath), git);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the working tree is now at the pushed commit, false if it is on another branch
+     */
+    private boolean pull(TriggerRun run, Project project, String projectPath, GitSync.CommandRunner git) throws ExecutionException {
+        GitUpdateConsole console = GitUpdateConsole.getInstance(project);
+        // Events replayed from the journal only kept the head commit, which is the same since deletions aren't run
+        String pushedHead = run.getEvent().getAfter() != null ? run.getEvent().getAfter() : run.getEvent().getHeadCommitId();
+        Path workTree = Path.of(projectPath);
+        GitSync.Result result;
+        try {
+            result = gitSync.sync(workTree, run.getTargetBranch(), pushedHead, git);
+        } catch (IOException e) {
+            throw new ExecutionException("Git sync failed: " + e.getMessage(), e);
+        }
+        LOG.info("Git sync of " + project.getName() + " to " + pushedHead + ": " + result);
+
+        switch (result) {
+            case OTHER_BRANCH:
+                String currentBranch;
+                try {
+                    currentBranch = gitSync.getCurrentBranch(workTree, git);
+                } catch (IOException e) {
+                    currentBranch = null;
+                }
+                console.printStatus("Skipping Git pull - current branch '" + (currentBranch != null ? currentBranch : "HEAD") +
+                        "' is not the target branch '" + run.getTargetBranch() + "'");
+                return false;
+            case UP_TO_DATE:
+                console.printStatus("'" + run.getTargetBranch() + "' is already at " + pushedHead + ", nothing to pull");
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Runs git for the sync stage, showing it in the project's console and letting a cancelled run kill it
+     */
+    private static GitSync.CommandRunner gitRunner(TriggerRun run, GitUpdateConsole console) {
+        return (workTree, args) -> {
+            run.checkNotCancelled();
+            List<String> command = new ArrayList<>(args.size() + 1);
+            command.add("git");
+            command.addAll(args);
+            console.printStatus("$ " + String.join(" ", command) + " (" + workTree + ")");
+            OSProcessHandler handler;
+            try {
+                handler = new OSProcessHandler(new GeneralCommandLine(command).withWorkDirectory(workTree.toString()));
+            } catch (ExecutionException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            CapturingProcessAdapter output = new CapturingProcessAdapter();
+            handler.addProcessListener(output);
+            console.getConsole().attachToProcess(handler);
+            run.setActiveProcess(handler);
+            try {
+                // Set by a stage timeout, which may have looked for a process to kill just before this one was set
+                if (Thread.currentThread().isInterrupted()) {
+                    handler.destroyProcess();
+                    throw new InterruptedIOException("git " + args.get(0) + " was stopped, the stage timed out");
+                }
+                handler.startNotify();
+                if (!handler.waitFor(TriggerStage.SYNC.getTimeoutMs())) {
+                    handler.destroyProcess();
+                    throw new IOException("git " + args.get(0) + " timed out");
+                }
+            } finally {
+                run.setActiveProcess(null);
+            }
+            run.checkNotCancelled();
+
+            Integer exitCode = handler.getExitCode();
+            if (exitCode == null || exitCode != 0) {
+                throw new IOException("git " + args.get(0) + " failed with exit code " + exitCode);
+            }
+            return output.getOutput().getStdout();
+        };
+    }
+
+    /**
+     * For a push that didn't list everything it changed, ask git what changed since the commit the ref moved
+     * away from, and skip the restart if the rule's path globs filter all of it out.
+     * When git can't tell, for example because that commit is gone after a forced push, the run restarts.
+     */
+    private void checkChangedPaths(TriggerRun run, GitUpdateConsole console, Path workTree, GitSync.CommandRunner git) {
+        String base = run.getDiffBase();
+        String after = run.getEvent().getAfter();
+        if (base == null || after == null) {
+            return;
+        }
+        String diff;
+        try {
+            // -z keeps paths unquoted, and without renames both the old and the new path are listed
+            diff = git.run(workTree, List.of("diff", "--name-only", "--no-renames", "-z", base, after, "--"));
+        } catch (IOException e) {
+            LOG.info("Could not list the paths changed by " + base + ".." + after
+                    + ", restarting '" + run.getTargetConfigName() + "' regardless: " + e.getMessage());
+            return;
+        }
+        List<String> paths = new ArrayList<>();
+        for (String path : diff.split("\0")) {
+            if (!path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+        if (!run.getPathFilter().matchesAny(paths)) {
+            run.skipRestart();
+            console.printStatus("None of the " + paths.size()
+                    + " changed paths concern '" + run.getTargetConfigName() + "', not restarting it");
+        }
+    }
+
+    /**
+     * Build the project while the old process keeps running. Fails if the build has errors or is aborted.
+     */
+    private CompletableFuture<Void> buildWhileRunning(TriggerRun run) {
+        Project project = run.getProject();
+        CompletableFuture<Void> built = new CompletableFuture<>();
+        long startNanos = System.nanoTime();
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (built.isDone()) {
+                // Timed out while waiting for the EDT
+                return;
+            }
+            if (run.isCancelled()) {
+                built.completeExceptionally(new CancellationException("Trigger run cancelled"));
+                return;
+            }
+            GitUpdateConsole.getInstance(project).printStatus("Building before restarting '" + run.getTargetConfigName() + "'");
+            ProjectTaskManager.getInstance(project).buildAllModules()
+                    .onSuccess(result -> {
+                        if (result.isAborted()) {
+                            built.completeExceptionally(new ExecutionException("Build was aborted"));
+                        } else if (result.hasErrors()) {
+                            built.completeExceptionally(new ExecutionException("Build finished with errors"));
+                        } else {
+                            built.complete(null);
+                        }
+                    })
+                    .onError(built::completeExceptionally);
+        }, ModalityState.NON_MODAL, project.getDisposed());
+        return built.orTimeout(TriggerStage.BUILD.getTimeoutMs(), TimeUnit.MILLISECONDS)
+                .whenComplete((v, e) -> {
+                    long tookNanos = System.nanoTime() - startNanos;
+                    metrics.record(TriggerMetrics.Stage.BUILD, tookNanos);
+                    long tookMs = TimeUnit.NANOSECONDS.toMillis(tookNanos);
+                    Throwable cause = unwrap(e);
+                    if (cause == null) {
+                        LOG.info("Build for '" + run.getTargetConfigName() + "' succeeded in " + tookMs + " ms");
+                    } else if (!(cause instanceof CancellationException) && !project.isDisposed()) {
+                        GitUpdateConsole.getInstance(project).printStatus("Build failed after " + tookMs + " ms, '"
+                                + run.getTargetConfigName() + "' keeps running the previous version: " + cause.getMessage());
+                    }
+                });
+    }
+
+    private void stopRunningProcesses(TriggerRun run) {
+        Project project = run.getProject();
+        RunProcessIndex index = RunProcessIndex.getInstance(project);
+        List<ProcessHandler> stopping = new ArrayList<>();
+        for (ProcessHandler process : index.getRunningProcesses(run.getConfiguration())) {
+            if (process.isProcessTerminating() || process.isProcessTerminated()) {
+                continue;
+            }
+            if (stopping.isEmpty()) {
+                // Downtime runs from the first kill until the configuration's next process starts
+                reportDowntime(run, index.awaitNextStart(run.getConfiguration()), System.nanoTime());
+            }
+            LOG.info("Terminating existing process for: " + run.getTargetConfigName());
+            process.destroyProcess();
+            stopping.add(process);
+        }
+        if (stopping.isEmpty()) {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + TriggerStage.STOP.getTimeoutMs();
+        for (ProcessHandler process : stopping) {
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            if (!process.waitFor(remaining)) {
+                LOG.warn("Process for '" + run.getTargetConfigName() + "' did not terminate in time");
+            }
+        }
+    }
+
+    private static void reportDowntime(TriggerRun run, CompletableFuture<ProcessHandler> restarted, long downSinceNanos) {
+        Project project = run.getProject();
+        // Without build before stop the configuration's before-run build happens inside the downtime window
+        restarted.orTimeout(TriggerStage.BUILD.getTimeoutMs() + TriggerStage.START.getTimeoutMs(), TimeUnit.MILLISECONDS)
+                .whenComplete((process, e) -> {
+                    long downtimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - downSinceNanos);
+                    String message = e == null
+                            ? "'" + run.getTargetConfigName() + "' was down for " + downtimeMs + " ms"
+                            : "'" + run.getTargetConfigName() + "' has not come back " + downtimeMs + " ms after being stopped";
+                    LOG.info(message);
+                    if (!project.isDisposed()) {
+                        GitUpdateConsole.getInstance(project).printStatus(message);
+                    }
+                });
+    }
+
+    /**
+     * Start the configuration on the EDT, the one step that has to run there
+     */
+    private CompletableFuture<Void> startOnEdt(TriggerRun run) {
+        Project project = run.getProject();
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        long startNanos = System.nanoTime();
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (started.isDone()) {
+                // Timed out while waiting for the EDT, a late start would replace whatever the user ran since
+                return;
+            }
+            if (run.isCancelled()) {
+                started.completeExceptionally(new CancellationException("Trigger run cancelled"));
+                return;
+            }
+            try {
+                ExecutionUtil.runConfiguration(run.getConfiguration(), DefaultRunExecutor.getRunExecutorInstance());
+                metrics.record(TriggerMetrics.Stage.START, System.nanoTime() - startNanos);
+                LOG.info("Rerun triggered for configuration: " + run.getTargetConfigName());
+                GitUpdateConsole.getInstance(project).printStatus("Restarted '" + run.getTargetConfigName() + "'");
+                started.complete(null);
+            } catch (Throwable e) {
+                started.completeExceptionally(e);
+            }
+        }, ModalityState.NON_MODAL, project.getDisposed());
+        return started.orTimeout(TriggerStage.START.getTimeoutMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @FunctionalInterface
+    private interface StageAction {
+        void run() throws Exception;
+    }
+
+    /**
+     * The pool thread running a stage, so a timeout can interrupt whatever the stage is waiting for
+     */
+    private static final class StageThread {
+        private Thread thread;
+        private boolean timedOut;
+
+        /**
+         * @return false if the stage already timed out and must not run
+         */
+        synchronized boolean enter() {
+            if (timedOut) {
+                return false;
+            }
+            thread = Thread.currentThread();
+            return true;
+        }
+
+        synchronized void exit() {
+            thread = null;
+            // Don't leave a timeout's interrupt behind for the pool's next task
+            Thread.interrupted();
+        }
+
+        synchronized void timeOut() {
+            timedOut = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dev.mave.gitupdatelistener.plugin.pipeline;
+
+import com.intellij.execution.RunnerAndConfigurationSettings;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.openapi.project.Project;
+import dev.mave.gitupdatelistener.plugin.webhook.PathFilter;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * One pass of a push event through the {@link TriggerPipeline}. Holds what earlier stages
+ * resolved for later ones and lets the whole run be cancelled from any thread.
+ */
+public final class TriggerRun {
+    private final PushEvent event;
+    private final String targetBranch;
+    private final TriggerKey key;
+    private final long journalSequence;
+    private final boolean pullOnly;
+    private final PathFilter pathFilter;
+
+    /** Where the diff checked against the path filter starts, or null if the run restarts regardless */
+    private volatile String diffBase;
+    private volatile Project project;
+    private volatile RunnerAndConfigurationSettings configuration;
+    private volatile ProcessHandler activeProcess;
+    private volatile boolean cancelled;
+    private volatile boolean restartSkipped;
+
+    /**
+     * @param projectName the project to restart in, or null for the first open project
+     */
+    public TriggerRun(@NotNull PushEvent event, @Nullable String projectName, @NotNull String targetConfigName) {
+        this(event, projectName, targetConfigName, -1);
+    }
+
+    /**
+     * @param projectName     the project to restart in, or null for the first open project
+     * @param journalSequence the sequence number of the delivery journal entry this run is for
+     */
+    public TriggerRun(@NotNull PushEvent event, @Nullable String projectName, @NotNull String targetConfigName,
+                      long journalSequence) {
+        this(event, projectName, targetConfigName, journalSequence, false, null);
+    }
+
+    /**
+     * @param projectName     the project to restart in, or null for the first open project
+     * @param journalSequence the sequence number of the delivery journal entry this run is for, or -1
+     * @param pullOnly        only pull, without restarting the configuration
+     * @param pathFilter      path globs to check against {@code git diff} once pulled, because the push
+     *                        didn't list everything it changed, or null to restart regardless
+     */
+    public TriggerRun(@NotNull PushEvent event, @Nullable String projectName, @NotNull String targetConfigName,
+                      long journalSequence, boolean pullOnly, @Nullable PathFilter pathFilter) {
+        this.event = event;
+        this.journalSequence = journalSequence;
+        this.pullOnly = pullOnly;
+        this.pathFilter = pathFilter;
+        this.diffBase = pathFilter != null && event.hasPreviousCommit() ? event.getBefore() : null;
+        String ref = event.getRef();
+        this.targetBranch = ref != null && ref.startsWith("refs/heads/") ? ref.substring("refs/heads/".length()) : "";
+        this.key = new TriggerKey(projectName, targetConfigName);
+    }
+
+    /**
+     * What this run restarts, used to coalesce runs for the same target
+     */
+    @NotNull
+    public TriggerKey getKey() {
+        return key;
+    }
+
+    /**
+     * The sequence number of the delivery journal entry this run is for, or -1 if it isn't journaled
+     */
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    /**
+     * Whether the run only pulls, for a push whose changed paths don't concern the configuration
+     */
+    public boolean isPullOnly() {
+        return pullOnly;
+    }
+
+    /**
+     * Path globs the sync stage checks against what the pull brought in, or null if the run restarts regardless
+     */
+    @Nullable
+    public PathFilter getPathFilter() {
+        return diffBase != null ? pathFilter : null;
+    }
+
+    /**
+     * The commit to diff from when checking the path filter: the oldest one the pushes this run covers moved away from
+     */
+    @Nullable
+    public String getDiffBase() {
+        return diffBase;
+    }
+
+    /**
+     * Take over what a superseded run would have restarted for, since this run now covers its push too
+     */
+    void absorb(@NotNull TriggerRun superseded) {
+        if (superseded.pullOnly || diffBase == null) {
+            return;
+        }
+        // A run without a filter restarts regardless, so this one has to as well
+        diffBase = superseded.diffBase;
+    }
+
+    /**
+     * Whether the run ends after syncing: it only pulls, or the pull changed no path the filter lets through
+     */
+    public boolean isRestartSkipped() {
+        return pullOnly || restartSkipped;
+    }
+
+    void skipRestart() {
+        this.restartSkipped = true;
+    }
+
+    @NotNull
+    public PushEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * The branch that was pushed, or an empty string if the push was not to a branch
+     */
+    @NotNull
+    public String getTargetBranch() {
+        return targetBranch;
+    }
+
+    @NotNull
+    public String getTargetConfigName() {
+        return key.getConfigName();
+    }
+
+    /**
+     * The project the run configuration lives in, resolved by the match stage
+     */
+    @Nullable
+    public Project getProject() {
+        return project;
+    }
+
+    void setProject(@NotNull Project project) {
+        this.project = project;
+    }
+
+    /**
+     * The run configuration to restart, resolved by the match stage
+     */
+    @Nullable
+    public RunnerAndConfigurationSettings getConfiguration() {
+        return configuration;
+    }
+
+    void setConfiguration(@NotNull RunnerAndConfigurationSettings configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Remember the external process a stage is waiting on, so cancelling the run can kill it
+     */
+    void setActiveProcess(@Nullable ProcessHandler process) {
+        this.activeProcess = process;
+        if (process != null && cancelled) {
+            process.destroyProcess();
+        }
+    }
+
+    /**
+     * Stop the run at the next stage boundary and kill any process a stage is waiting on
+     */
+    public void cancel() {
+        cancelled = true;
+        destroyActiveProcess();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void checkNotCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Trigger run cancelled");
+        }
+    }
+
+    void destroyActiveProcess() {
+        ProcessHandler process = activeProcess;
+        if (process != null && !process.isProcessTerminated()) {
+            process.destroyProcess();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dev.mave.gitupdatelistener.plugin.pipeline;
+
+/**
+ * The stages a triggered run passes through, in order, with how long each may take
+ */
+public enum TriggerStage {
+    MATCH(10_000),
+    SYNC(120_000),
+    BUILD(600_000),
+    STOP(10_000),
+    START(60_000),
+    NOTIFY(30_000);
+
+    private final long timeoutMs;
+
+    TriggerStage(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+}
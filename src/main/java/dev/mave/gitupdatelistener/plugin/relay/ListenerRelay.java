@@ -0,0 +1,291 @@
+package dev.mave.gitupdatelistener.plugin.relay;
+
+import com.intellij.openapi.diagnostic.Logger;
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import dev.mave.gitupdatelistener.plugin.webhook.RuleIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares the instance's listener with other IDE instances on the same host.
+ * <p>
+ * The instance that bound the public port also listens on a Unix domain socket next to it. Every
+ * other instance configured for the same port connects there as a {@link RelayFollower} and registers
+ * its rules. Each verified push is parsed once, by the owner, and its fields are forwarded to every
+ * follower with a rule for its repository and ref, which then decides, journals and runs as if GitHub
+ * had delivered it directly.
+ * <p>
+ * Forwarding never holds up the delivery: frames are encoded once and queued per follower, and a
+ * follower that falls too far behind is disconnected, to register again once it has caught up.
+ */
+public final class ListenerRelay implements AutoCloseable {
+    private static final Logger LOG = Logger.getInstance(ListenerRelay.class);
+
+    /** Frames queued for a follower before it is considered stuck */
+    private static final int MAX_QUEUED_FRAMES = 1024;
+    /** Ends a follower's writer thread */
+    private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+    private final String name;
+    private final Path socketPath;
+    private final ServerSocketChannel server;
+    private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean isRunning = new AtomicBoolean(true);
+    private final AtomicInteger followerCount = new AtomicInteger();
+    private final Thread acceptorThread;
+
+    private ListenerRelay(String name, Path socketPath, ServerSocketChannel server) {
+        this.name = name;
+        this.socketPath = socketPath;
+        this.server = server;
+        acceptorThread = new Thread(this::acceptLoop, name);
+        acceptorThread.setDaemon(true);
+    }
+
+    /**
+     * Where the owner of a port accepts followers: a socket in the user's home, so only instances
+     * of the same user share a listener
+     */
+    @NotNull
+    public static Path getSocketPath(int port) {
+        return Path.of(System.getProperty("user.home"), ".git-update-listener", "listener-" + port + ".sock");
+    }
+
+    /**
+     * Start accepting followers. Only the instance that holds the public port may call this, it
+     * replaces whatever socket a previous owner left behind.
+     *
+     * @throws IOException if the socket can't be bound, or another instance still accepts on it
+     */
+    @NotNull
+    public static ListenerRelay open(@NotNull String name, @NotNull Path socketPath) throws IOException {
+        Path directory = socketPath.getParent();
+        if (!Files.isDirectory(directory)) {
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(directory);
+            }
+        }
+        if (Files.exists(socketPath)) {
+            // Left behind by an owner that exited, unless one still answers
+            if (isAccepting(socketPath)) {
+                throw new IOException("Another instance already relays on " + socketPath);
+            }
+            Files.deleteIfExists(socketPath);
+        }
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        ListenerRelay relay = new ListenerRelay(name, socketPath, server);
+        relay.acceptorThread.start();
+        LOG.info("Relaying pushes to other instances through " + socketPath);
+        return relay;
+    }
+
+    /**
+     * Whether an instance relays through the given socket, rather than the socket file being left behind
+     */
+    public static boolean isAccepting(@NotNull Path socketPath) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @NotNull
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    /**
+     * Whether any follower is connected, so pushes have to be parsed even if this instance ignores them
+     */
+    public boolean hasFollowers() {
+        return !followers.isEmpty();
+    }
+
+    /**
+     * Whether a follower filters by changed paths, so pushes must be parsed with them
+     */
+    public boolean needsChangedPaths() {
+        for (Follower follower : followers) {
+            if (follower.rules.hasPathFilters()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queue a push for every follower with a rule for its repository and ref. Doesn't block.
+     */
+    public void forward(@NotNull String deliveryId, @NotNull PushEvent event) {
+        ByteBuffer frame = null;
+        for (Follower follower : followers) {
+            if (follower.rules.match(event.getRepositoryFullName(), event.getRef()).isEmpty()) {
+                continue;
+            }
+            if (frame == null) {
+                try {
+                    frame = RelayProtocol.encodePush(deliveryId, event);
+                } catch (IOException e) {
+                    // Writing to memory
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (!follower.outbox.offer(frame.duplicate())) {
+                LOG.warn("Disconnecting " + follower.name + ", it fell " + MAX_QUEUED_FRAMES + " pushes behind");
+                follower.close();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (isRunning.get()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                if (isRunning.get()) {
+                    LOG.warn("Error accepting relay connection", e);
+                }
+                break;
+            }
+            Follower follower = new Follower(channel, name + "-Follower-" + followerCount.incrementAndGet());
+            followers.add(follower);
+            follower.start();
+            if (!isRunning.get()) {
+                follower.close();
+            }
+        }
+    }
+
+    /**
+     * Stop relaying. Followers notice and one of them takes over the port once it is free.
+     */
+    @Override
+    public void close() {
+        if (!isRunning.getAndSet(false)) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.warn("Error closing relay socket", e);
+        }
+        for (Follower follower : followers) {
+            follower.close();
+        }
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            LOG.debug("Failed to delete relay socket " + socketPath, e);
+        }
+    }
+
+    /**
+     * A connected instance: its rules, read on one thread, and the pushes queued for it, written on another
+     */
+    private final class Follower {
+        final SocketChannel channel;
+        final String name;
+        final BlockingQueue<ByteBuffer> outbox = new ArrayBlockingQueue<>(MAX_QUEUED_FRAMES);
+        /** Nothing matches until the follower has registered */
+        volatile RuleIndex rules = new RuleIndex(List.of());
+        private final AtomicBoolean isOpen = new AtomicBoolean(true);
+
+        Follower(SocketChannel channel, String name) {
+            this.channel = channel;
+            this.name = name;
+        }
+
+        void start() {
+            Thread reader = new Thread(this::readLoop, name);
+            reader.setDaemon(true);
+            reader.start();
+            Thread writer = new Thread(this::writeLoop, name + "-Writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        private void readLoop() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+                ByteBuffer frame;
+                while ((frame = RelayProtocol.read(in)) != null) {
+                    if (frame.get() == RelayProtocol.REGISTER) {
+                        List<TriggerRule> registered = RelayProtocol.decodeRegistration(frame);
+                        rules = new RuleIndex(registered);
+                        LOG.info(name + " registered " + registered.size() + " rule(s)");
+                    }
+                }
+            } catch (IOException | BufferUnderflowException e) {
+                if (isOpen.get()) {
+                    LOG.info(name + " disconnected: " + e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                ByteBuffer frame;
+                while ((frame = outbox.take()) != CLOSED) {
+                    RelayProtocol.write(channel, frame);
+                }
+            } catch (IOException e) {
+                if (isOpen.get()) {
+                    LOG.info("Failed to forward a push to " + name + ": " + e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (!isOpen.getAndSet(false)) {
+                return;
+            }
+            followers.remove(this);
+            outbox.clear();
+            outbox.offer(CLOSED);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing relay connection", e);
+            }
+        }
+    }
+}
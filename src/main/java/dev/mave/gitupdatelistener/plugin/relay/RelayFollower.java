@@ -0,0 +1,183 @@
+package dev.mave.gitupdatelistener.plugin.relay;
+
+import com.intellij.openapi.diagnostic.Logger;
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Receives pushes from the instance that owns the public port, while this one can't bind it.
+ * <p>
+ * Holding the port is what makes an instance the owner, so there is nothing to elect: before every
+ * attempt to connect, the follower tries to take the port over itself. Once the owner exits, its port
+ * and relay socket close, every follower races to bind the port, and whichever succeeds starts relaying
+ * while the others connect to it. Pushes GitHub delivers while no instance holds the port fail, and
+ * can be redelivered from the repository's webhook settings.
+ */
+public final class RelayFollower implements AutoCloseable {
+    private static final Logger LOG = Logger.getInstance(RelayFollower.class);
+
+    private static final long MIN_RETRY_DELAY_MS = 200;
+    private static final long MAX_RETRY_DELAY_MS = 10_000;
+
+    private final String name;
+    private final Path socketPath;
+    private final Supplier<List<TriggerRule>> rules;
+    private final BiConsumer<String, PushEvent> pushes;
+    private final Predicate<RelayFollower> takeOver;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private final Object writeLock = new Object();
+    /** Waited on between attempts, so close() ends the wait without interrupting a thread that may be journaling */
+    private final Object retryLock = new Object();
+
+    private volatile SocketChannel channel;
+
+    /**
+     * @param rules    read whenever the follower registers, the rules to receive pushes for
+     * @param pushes   receives the delivery ID and fields of every forwarded push, on the follower's thread
+     * @param takeOver tries to bind the public port, true once this instance owns it or doesn't need
+     *                 the follower any more, which then stops
+     */
+    public RelayFollower(@NotNull String name, @NotNull Path socketPath, @NotNull Supplier<List<TriggerRule>> rules,
+                         @NotNull BiConsumer<String, PushEvent> pushes, @NotNull Predicate<RelayFollower> takeOver) {
+        this.name = name;
+        this.socketPath = socketPath;
+        this.rules = rules;
+        this.pushes = pushes;
+        this.takeOver = takeOver;
+    }
+
+    public void start() {
+        if (!isRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Follower already started");
+        }
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @NotNull
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    /**
+     * Send the rules again after they changed. Until the owner has them, pushes are matched against the previous ones.
+     */
+    public void register() {
+        SocketChannel current = channel;
+        if (current == null) {
+            // Sent on connecting
+            return;
+        }
+        try {
+            sendRegistration(current);
+        } catch (IOException e) {
+            LOG.info("Failed to register with the listener's owner, registering again on reconnecting: " + e);
+        }
+    }
+
+    private void sendRegistration(SocketChannel current) throws IOException {
+        ByteBuffer frame = RelayProtocol.encodeRegistration(rules.get());
+        synchronized (writeLock) {
+            RelayProtocol.write(current, frame);
+        }
+    }
+
+    private void run() {
+        long retryDelayMs = MIN_RETRY_DELAY_MS;
+        while (isRunning.get()) {
+            if (takeOver.test(this)) {
+                isRunning.set(false);
+                return;
+            }
+            boolean connected = false;
+            try (SocketChannel current = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+                channel = current;
+                connected = true;
+                sendRegistration(current);
+                LOG.info("Receiving pushes from the instance listening on the port, through " + socketPath);
+                receive(current);
+                if (isRunning.get()) {
+                    LOG.info("The instance listening on the port went away, taking over if it is free");
+                }
+            } catch (IOException | BufferUnderflowException e) {
+                if (isRunning.get() && connected) {
+                    LOG.info("Lost the connection to the listener's owner: " + e);
+                }
+            } finally {
+                channel = null;
+            }
+
+            if (connected) {
+                // Try to take over right away, the port is most likely free
+                retryDelayMs = MIN_RETRY_DELAY_MS;
+                continue;
+            }
+            // Nobody accepts yet, as while a new owner is starting up
+            try {
+                synchronized (retryLock) {
+                    if (isRunning.get()) {
+                        retryLock.wait(retryDelayMs + ThreadLocalRandom.current().nextLong(retryDelayMs / 2 + 1));
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    private void receive(SocketChannel current) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(current)));
+        ByteBuffer frame;
+        while ((frame = RelayProtocol.read(in)) != null) {
+            if (frame.get() != RelayProtocol.PUSH) {
+                continue;
+            }
+            RelayProtocol.Push push = RelayProtocol.decodePush(frame);
+            try {
+                pushes.accept(push.deliveryId, push.event);
+            } catch (RuntimeException e) {
+                LOG.error("Error handling forwarded push " + push.deliveryId, e);
+            }
+        }
+    }
+
+    /**
+     * Stop following without waiting for the thread, which may be busy handling a push
+     */
+    @Override
+    public void close() {
+        if (!isRunning.getAndSet(false)) {
+            return;
+        }
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing relay connection", e);
+            }
+        }
+        synchronized (retryLock) {
+            retryLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dev.mave.gitupdatelistener.plugin.relay;
+
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The frames instances exchange over the relay socket. Each is its length, a type byte and a payload,
+ * with strings written as their UTF-8 length and bytes, or -1 for null.
+ * <p>
+ * A follower sends {@link #REGISTER} with the rules it wants pushes for whenever they change. The owner
+ * sends {@link #PUSH} with the delivery ID and the parsed fields of each push matching them.
+ */
+final class RelayProtocol {
+    static final byte REGISTER = 1;
+    static final byte PUSH = 2;
+
+    /** Larger frames are refused, a push with 2048 commits' worth of paths stays well below */
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private RelayProtocol() {
+    }
+
+    /**
+     * A follower's rules, without the project, which only means something to the follower
+     */
+    @NotNull
+    static ByteBuffer encodeRegistration(@NotNull List<TriggerRule> rules) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 64 * rules.size());
+        DataOutputStream out = startFrame(bytes, REGISTER);
+        out.writeInt(rules.size());
+        for (TriggerRule rule : rules) {
+            writeString(out, rule.repository);
+            writeString(out, rule.refPattern);
+            writeString(out, rule.configName);
+            writeString(out, rule.includePaths);
+            writeString(out, rule.excludePaths);
+        }
+        return finishFrame(bytes);
+    }
+
+    @NotNull
+    static List<TriggerRule> decodeRegistration(@NotNull ByteBuffer payload) {
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        List<TriggerRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TriggerRule rule = new TriggerRule(readString(payload), readString(payload), "", readString(payload));
+            rule.includePaths = readString(payload);
+            rule.excludePaths = readString(payload);
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    @NotNull
+    static ByteBuffer encodePush(@NotNull String deliveryId, @NotNull PushEvent event) throws IOException {
+        Set<String> changedPaths = event.getChangedPaths();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512 + (changedPaths != null ? 32 * changedPaths.size() : 0));
+        DataOutputStream out = startFrame(bytes, PUSH);
+        writeString(out, deliveryId);
+        writeString(out, event.getRef());
+        writeString(out, event.getRepositoryFullName());
+        writeString(out, event.getHeadCommitId());
+        writeString(out, event.getHeadCommitMessage());
+        writeString(out, event.getHeadCommitAuthorName());
+        writeString(out, event.getBefore());
+        writeString(out, event.getAfter());
+        out.writeBoolean(event.isForced());
+        out.writeInt(event.getListedCommits());
+        out.writeInt(changedPaths != null ? changedPaths.size() : -1);
+        if (changedPaths != null) {
+            for (String path : changedPaths) {
+                writeString(out, path);
+            }
+        }
+        return finishFrame(bytes);
+    }
+
+    /**
+     * A forwarded push, as its delivery ID and event
+     */
+    static final class Push {
+        final String deliveryId;
+        final PushEvent event;
+
+        private Push(String deliveryId, PushEvent event) {
+            this.deliveryId = deliveryId;
+            this.event = event;
+        }
+    }
+
+    @NotNull
+    static Push decodePush(@NotNull ByteBuffer payload) {
+        String deliveryId = readString(payload);
+        String ref = readString(payload);
+        String repositoryFullName = readString(payload);
+        String headCommitId = readString(payload);
+        String headCommitMessage = readString(payload);
+        String headCommitAuthorName = readString(payload);
+        String before = readString(payload);
+        String after = readString(payload);
+        boolean forced = payload.get() != 0;
+        int listedCommits = payload.getInt();
+        int pathCount = payload.getInt();
+        if (pathCount > payload.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        Set<String> changedPaths = null;
+        if (pathCount >= 0) {
+            changedPaths = new LinkedHashSet<>(pathCount * 2);
+            for (int i = 0; i < pathCount; i++) {
+                changedPaths.add(readString(payload));
+            }
+        }
+        return new Push(deliveryId != null ? deliveryId : "", new PushEvent(ref, repositoryFullName, headCommitId,
+                headCommitMessage, headCommitAuthorName, changedPaths, listedCommits, before, after, forced));
+    }
+
+    /**
+     * Write a whole frame. Callers writing from several threads must hold a lock.
+     */
+    static void write(@NotNull SocketChannel channel, @NotNull ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Read the next frame, its type byte followed by the payload
+     *
+     * @return null once the other side closed the connection
+     */
+    @Nullable
+    static ByteBuffer read(@NotNull DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 1 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid relay frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return ByteBuffer.wrap(frame);
+    }
+
+    private static DataOutputStream startFrame(ByteArrayOutputStream bytes, byte type) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        // The length is filled in once the payload is written
+        out.writeInt(0);
+        out.writeByte(type);
+        return out;
+    }
+
+    private static ByteBuffer finishFrame(ByteArrayOutputStream bytes) {
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - Integer.BYTES);
+        return frame.asReadOnlyBuffer();
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A shared pool of fixed-size byte buffers that request bodies are streamed into.
+ * <p>
+ * Only up to {@code maxPooled} idle buffers are kept; anything released beyond that is left to the GC,
+ * so one huge delivery doesn't pin its full size on the heap forever.
+ */
+public final class BufferPool {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+    private final boolean direct;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param direct allocate buffers outside the Java heap
+     * @param maxPooled the number of idle buffers kept for reuse
+     */
+    public BufferPool(int chunkSize, boolean direct, int maxPooled) {
+        this.chunkSize = chunkSize;
+        this.direct = direct;
+        this.maxPooled = maxPooled;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Take a cleared buffer from the pool, allocating one if none is idle
+     */
+    @NotNull
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+        }
+        idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #acquire()}. It must not be used afterwards.
+     */
+    public void release(@NotNull ByteBuffer buffer) {
+        if (buffer.capacity() != chunkSize || buffer.isDirect() != direct) {
+            return;
+        }
+        if (idleCount.incrementAndGet() <= maxPooled) {
+            idle.offer(buffer);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}
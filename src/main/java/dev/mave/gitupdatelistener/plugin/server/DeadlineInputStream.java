@@ -0,0 +1,103 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A socket's input whose reads fail once a deadline has passed, not only when a single read stalls.
+ * <p>
+ * A socket timeout alone lets a client that trickles a byte at a time hold a connection forever.
+ * Before each read the socket timeout is narrowed to what is left until the deadline. Without a
+ * deadline the idle timeout applies, as while a keep-alive connection waits for its next request.
+ */
+public final class DeadlineInputStream extends FilterInputStream {
+    private final Socket socket;
+    private final int idleTimeoutMs;
+
+    private long deadlineNanos;
+    private boolean hasDeadline;
+    /** A deadline to start once the next read returns data, or 0 */
+    private int startOnDataMs;
+
+    public DeadlineInputStream(Socket socket, int idleTimeoutMs) throws IOException {
+        super(socket.getInputStream());
+        this.socket = socket;
+        this.idleTimeoutMs = idleTimeoutMs;
+        socket.setSoTimeout(idleTimeoutMs);
+    }
+
+    /**
+     * Start a deadline once the client sends anything, so waiting idle doesn't count against it
+     */
+    void startDeadlineOnData(int timeoutMs) {
+        startOnDataMs = timeoutMs;
+    }
+
+    /**
+     * Fail reads that haven't completed within this many milliseconds from now
+     */
+    void startDeadline(int timeoutMs) {
+        startOnDataMs = 0;
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        hasDeadline = true;
+    }
+
+    /**
+     * Go back to the idle timeout
+     */
+    void clearDeadline() throws IOException {
+        startOnDataMs = 0;
+        if (hasDeadline) {
+            hasDeadline = false;
+            socket.setSoTimeout(idleTimeoutMs);
+        }
+    }
+
+    /**
+     * Whether a timeout now means the deadline passed, rather than that the connection sat idle
+     */
+    boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    @Override
+    public int read() throws IOException {
+        applyDeadline();
+        int read = super.read();
+        if (read >= 0) {
+            dataArrived();
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        applyDeadline();
+        int read = super.read(bytes, offset, length);
+        if (read > 0) {
+            dataArrived();
+        }
+        return read;
+    }
+
+    private void applyDeadline() throws IOException {
+        if (!hasDeadline) {
+            return;
+        }
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new SocketTimeoutException("Read deadline passed");
+        }
+        // A timeout of 0 would mean no timeout at all
+        socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+    }
+
+    private void dataArrived() {
+        if (startOnDataMs > 0) {
+            startDeadline(startOnDataMs);
+        }
+    }
+}
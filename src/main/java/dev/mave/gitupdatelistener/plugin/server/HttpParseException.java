@@ -0,0 +1,19 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is malformed or exceeds a limit. Carries the status code to answer with.
+ */
+public class HttpParseException extends IOException {
+    private final int statusCode;
+
+    public HttpParseException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
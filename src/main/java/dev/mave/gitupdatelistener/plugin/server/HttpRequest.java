@@ -0,0 +1,90 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A single parsed HTTP/1.x request. Header names are stored lower-cased, so lookups are case-insensitive.
+ * Closing the request returns its body buffers to their pool.
+ */
+public final class HttpRequest implements AutoCloseable {
+    private final String method;
+    private final String target;
+    private final String version;
+    private final Map<String, String> headers;
+    private final RequestBody body;
+    private final long startNanos;
+    private final byte[] bodyMac;
+
+    HttpRequest(String method, String target, String version, Map<String, String> headers, RequestBody body,
+                long startNanos, @Nullable byte[] bodyMac) {
+        this.method = method;
+        this.target = target;
+        this.version = version;
+        this.headers = headers;
+        this.body = body;
+        this.startNanos = startNanos;
+        this.bodyMac = bodyMac;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the request line had been read, the start of reading this request
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    @NotNull
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * The request target without its query string, e.g. "/metrics" for "/metrics?x=1"
+     */
+    @NotNull
+    public String getPath() {
+        int query = target.indexOf('?');
+        return query >= 0 ? target.substring(0, query) : target;
+    }
+
+    @Nullable
+    public String getHeader(@NotNull String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The MAC of the body computed while it was read, or null if the parser wasn't given a {@link javax.crypto.Mac}
+     */
+    @Nullable
+    public byte[] getBodyMac() {
+        return bodyMac;
+    }
+
+    /**
+     * The raw body, exactly as many bytes as the client declared or sent in chunks
+     */
+    @NotNull
+    public RequestBody getBody() {
+        return body;
+    }
+
+    /**
+     * Whether the client wants to reuse the connection for another request
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if ("HTTP/1.0".equals(version)) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    @Override
+    public void close() {
+        body.close();
+    }
+}
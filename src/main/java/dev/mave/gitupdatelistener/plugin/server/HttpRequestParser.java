@@ -0,0 +1,392 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Mac;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads HTTP/1.1 requests straight from the socket's bytes.
+ * <p>
+ * One parser is used per connection and reads any number of keep-alive requests from it.
+ * Header lines are parsed in place from a reusable buffer, which grows to hold a line as long as
+ * the headers may be. Bodies are read exactly by {@code Content-Length} or by chunked transfer
+ * encoding, never by character count, and are streamed into buffers borrowed from a {@link BufferPool}.
+ * An optional {@link Mac} is fed the body bytes as they arrive, so a signature is ready without a
+ * second pass over the body.
+ * <p>
+ * When reading from a {@link DeadlineInputStream}, the headers and the body of each request can be
+ * given a time limit, and a request that misses it is refused with 408.
+ */
+public final class HttpRequestParser {
+    public static final int DEFAULT_MAX_HEADER_SIZE = 16 * 1024;
+    /** GitHub caps webhook payloads at 25 MB */
+    public static final int DEFAULT_MAX_BODY_SIZE = 25 * 1024 * 1024;
+
+    /** The line buffer's initial size, it grows for longer lines up to the header size limit */
+    private static final int LINE_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream input;
+    private final OutputStream output;
+    private final BufferPool pool;
+    private final int maxHeaderSize;
+    private final int maxLineSize;
+    private final int maxBodySize;
+    private Mac bodyMac;
+    private final DeadlineInputStream deadlines;
+    private int headerTimeoutMs;
+    private int bodyTimeoutMs;
+
+    /** Bytes read from the socket but not yet consumed live in buffer[position, limit) */
+    private byte[] buffer = new byte[LINE_BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    /** Bounds of the line most recently returned by readLine() */
+    private int lineStart;
+    private int lineEnd;
+
+    public HttpRequestParser(InputStream input, OutputStream output, BufferPool pool) {
+        this(input, output, pool, DEFAULT_MAX_HEADER_SIZE, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * @param output used only to send "100 Continue" to clients that ask for it before sending a body
+     */
+    public HttpRequestParser(InputStream input, OutputStream output, BufferPool pool, int maxHeaderSize, int maxBodySize) {
+        this.input = input;
+        this.output = output;
+        this.pool = pool;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxLineSize = Math.max(LINE_BUFFER_SIZE, maxHeaderSize);
+        this.maxBodySize = maxBodySize;
+        this.deadlines = input instanceof DeadlineInputStream ? (DeadlineInputStream) input : null;
+    }
+
+    /**
+     * Limit how long the headers of a request may take to arrive, counted from its first byte, and then its body.
+     * Only applies when reading from a {@link DeadlineInputStream}.
+     *
+     * @param headerTimeoutMs 0 for no limit
+     * @param bodyTimeoutMs   0 for no limit
+     */
+    public void setTimeouts(int headerTimeoutMs, int bodyTimeoutMs) {
+        this.headerTimeoutMs = Math.max(0, headerTimeoutMs);
+        this.bodyTimeoutMs = Math.max(0, bodyTimeoutMs);
+    }
+
+    /**
+     * Compute a MAC over the body of every request read from now on, available from {@link HttpRequest#getBodyMac()}
+     *
+     * @param mac a keyed MAC owned by this parser's thread, or null to stop computing one
+     */
+    public void setBodyMac(@Nullable Mac mac) {
+        this.bodyMac = mac;
+    }
+
+    /**
+     * Read the next request from the connection.
+     *
+     * @return the request, or null if the client closed the connection cleanly between requests.
+     * The caller must close the request to return its body buffers to the pool.
+     */
+    @Nullable
+    public HttpRequest readRequest() throws IOException {
+        if (deadlines == null) {
+            return read();
+        }
+        if (headerTimeoutMs > 0) {
+            if (position < limit) {
+                // Pipelined bytes of this request are already here
+                deadlines.startDeadline(headerTimeoutMs);
+            } else {
+                deadlines.startDeadlineOnData(headerTimeoutMs);
+            }
+        }
+        try {
+            return read();
+        } catch (SocketTimeoutException e) {
+            if (deadlines.hasDeadline()) {
+                throw new HttpParseException(408, "Request not received in time");
+            }
+            throw e;
+        } finally {
+            deadlines.clearDeadline();
+        }
+    }
+
+    private HttpRequest read() throws IOException {
+        int headerBytes = 0;
+
+        // Skip stray line breaks left between requests, as RFC 9112 allows
+        do {
+            if (!readLine()) {
+                if (position == limit) return null;
+                throw new HttpParseException(400, "Connection closed inside request line");
+            }
+            headerBytes += lineEnd - lineStart + 2;
+        } while (lineStart == lineEnd);
+        // Measured from here, so the idle wait of a keep-alive connection doesn't count as reading
+        long startNanos = System.nanoTime();
+
+        String requestLine = ascii(lineStart, lineEnd);
+        int firstSpace = requestLine.indexOf(' ');
+        int lastSpace = requestLine.lastIndexOf(' ');
+        if (firstSpace <= 0 || lastSpace == firstSpace) {
+            throw new HttpParseException(400, "Malformed request line");
+        }
+        String method = requestLine.substring(0, firstSpace);
+        String target = requestLine.substring(firstSpace + 1, lastSpace);
+        String version = requestLine.substring(lastSpace + 1);
+        if (!version.startsWith("HTTP/1.")) {
+            throw new HttpParseException(400, "Unsupported protocol version: " + version);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        readHeaderLines(headers, headerBytes);
+
+        String transferEncoding = headers.get("transfer-encoding");
+        boolean chunked = transferEncoding != null;
+        // Any other coding, even one applied before chunked, would hand the caller a body it can't read
+        if (chunked && !"chunked".equalsIgnoreCase(transferEncoding)) {
+            throw new HttpParseException(501, "Unsupported transfer encoding: " + transferEncoding);
+        }
+        long contentLength = chunked ? -1 : parseContentLength(headers.get("content-length"));
+
+        if ("100-continue".equalsIgnoreCase(headers.get("expect"))) {
+            output.write(CONTINUE_RESPONSE);
+            output.flush();
+        }
+        if (deadlines != null) {
+            if (bodyTimeoutMs > 0) {
+                deadlines.startDeadline(bodyTimeoutMs);
+            } else {
+                deadlines.clearDeadline();
+            }
+        }
+
+        RequestBody body = new RequestBody(pool);
+        byte[] mac = null;
+        try {
+            if (bodyMac != null) {
+                bodyMac.reset();
+            }
+            if (chunked) {
+                readChunkedBody(body, headers);
+            } else {
+                readBody(body, contentLength);
+            }
+            body.finish();
+            if (bodyMac != null) {
+                mac = bodyMac.doFinal();
+            }
+        } catch (IOException | RuntimeException e) {
+            body.close();
+            throw e;
+        }
+        return new HttpRequest(method, target, version, headers, body, startNanos, mac);
+    }
+
+    /**
+     * Read header lines up to the blank line, merging repeated names as a comma-separated list
+     *
+     * @param headers where to put the fields, or null to check and discard them
+     * @return the number of bytes consumed
+     */
+    private int readHeaderLines(@Nullable Map<String, String> headers, int alreadyRead) throws IOException {
+        int headerBytes = 0;
+        while (true) {
+            if (!readLine()) {
+                throw new HttpParseException(400, "Connection closed inside headers");
+            }
+            headerBytes += lineEnd - lineStart + 2;
+            if (alreadyRead + headerBytes > maxHeaderSize) {
+                throw new HttpParseException(431, "Request headers exceed " + maxHeaderSize + " bytes");
+            }
+            if (lineStart == lineEnd) {
+                return headerBytes;
+            }
+
+            int colon = indexOf((byte) ':', lineStart, lineEnd);
+            if (colon <= lineStart) {
+                throw new HttpParseException(400, "Malformed header line");
+            }
+            if (headers == null) {
+                continue;
+            }
+            String name = lowerAscii(lineStart, colon);
+            String value = ascii(colon + 1, lineEnd).trim();
+            headers.merge(name, value, (a, b) -> a + ", " + b);
+        }
+    }
+
+    /**
+     * Validate the declared body length before any of the body is read, so oversized requests
+     * are refused without a "100 Continue"
+     */
+    private long parseContentLength(@Nullable String contentLengthHeader) throws HttpParseException {
+        if (contentLengthHeader == null) {
+            return 0;
+        }
+        long contentLength;
+        try {
+            contentLength = Long.parseLong(contentLengthHeader);
+        } catch (NumberFormatException e) {
+            throw new HttpParseException(400, "Invalid Content-Length: " + contentLengthHeader);
+        }
+        if (contentLength < 0) {
+            throw new HttpParseException(400, "Invalid Content-Length: " + contentLengthHeader);
+        }
+        if (contentLength > maxBodySize) {
+            throw new HttpParseException(413, "Request body exceeds " + maxBodySize + " bytes");
+        }
+        return contentLength;
+    }
+
+    private void readChunkedBody(RequestBody body, Map<String, String> headers) throws IOException {
+        while (true) {
+            if (!readLine()) {
+                throw new HttpParseException(400, "Connection closed inside chunked body");
+            }
+            int sizeEnd = indexOf((byte) ';', lineStart, lineEnd);
+            if (sizeEnd < 0) sizeEnd = lineEnd;
+            long chunkSize;
+            try {
+                chunkSize = Long.parseLong(ascii(lineStart, sizeEnd).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new HttpParseException(400, "Invalid chunk size");
+            }
+            if (chunkSize < 0) {
+                throw new HttpParseException(400, "Invalid chunk size");
+            }
+            if (chunkSize == 0) {
+                break;
+            }
+            if (body.size() + chunkSize > maxBodySize) {
+                throw new HttpParseException(413, "Request body exceeds " + maxBodySize + " bytes");
+            }
+            readBody(body, chunkSize);
+
+            if (!readLine() || lineStart != lineEnd) {
+                throw new HttpParseException(400, "Missing line break after chunk");
+            }
+        }
+
+        // Nothing here needs trailer fields, and letting them into the headers would let a client
+        // override fields that were already acted on, so they are only checked against the size limit
+        readHeaderLines(null, 0);
+        headers.remove("transfer-encoding");
+        headers.put("content-length", Long.toString(body.size()));
+    }
+
+    /**
+     * Stream exactly length bytes into the body, looping over short reads until they have all arrived
+     */
+    private void readBody(RequestBody body, long length) throws IOException {
+        while (length > 0) {
+            ByteBuffer chunk = body.writableChunk();
+            int wanted = (int) Math.min(length, chunk.remaining());
+            int read;
+            if (position < limit) {
+                // Bytes that arrived together with the headers
+                read = Math.min(wanted, limit - position);
+                chunk.put(buffer, position, read);
+                updateMac(buffer, position, read);
+                position += read;
+            } else if (chunk.hasArray()) {
+                read = input.read(chunk.array(), chunk.arrayOffset() + chunk.position(), wanted);
+                if (read > 0) {
+                    updateMac(chunk.array(), chunk.arrayOffset() + chunk.position(), read);
+                    chunk.position(chunk.position() + read);
+                }
+            } else {
+                // Sockets can't read into direct buffers, so stage through the line buffer
+                position = 0;
+                limit = 0;
+                read = input.read(buffer, 0, Math.min(wanted, buffer.length));
+                if (read > 0) {
+                    chunk.put(buffer, 0, read);
+                    updateMac(buffer, 0, read);
+                }
+            }
+            if (read < 0) {
+                throw new EOFException("Connection closed with " + length + " body bytes outstanding");
+            }
+            body.advance(read);
+            length -= read;
+        }
+    }
+
+    private void updateMac(byte[] bytes, int offset, int length) {
+        if (bodyMac != null) {
+            bodyMac.update(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Read the next line into [lineStart, lineEnd), without its CRLF or bare LF terminator
+     *
+     * @return false if the stream ended before a complete line
+     */
+    private boolean readLine() throws IOException {
+        int scan = position;
+        while (true) {
+            int newline = indexOf((byte) '\n', scan, limit);
+            if (newline >= 0) {
+                lineStart = position;
+                lineEnd = newline > position && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+                position = newline + 1;
+                return true;
+            }
+            scan = limit;
+            if (position > 0) {
+                // Slide the partial line to the front so the buffer can hold it whole
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                scan -= position;
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) {
+                if (buffer.length >= maxLineSize) {
+                    throw new HttpParseException(431, "Line exceeds " + maxLineSize + " bytes");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, maxLineSize));
+            }
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private String ascii(int from, int to) {
+        return new String(buffer, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private String lowerAscii(int from, int to) {
+        char[] chars = new char[to - from];
+        for (int i = from; i < to; i++) {
+            int c = buffer[i] & 0xFF;
+            chars[i - from] = (char) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,67 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes minimal HTTP/1.1 responses
+ */
+public final class HttpResponse {
+    private HttpResponse() {
+    }
+
+    /**
+     * Write a complete plain-text response and flush it
+     */
+    public static void write(OutputStream output, int statusCode, String body, boolean keepAlive) throws IOException {
+        write(output, statusCode, "text/plain; charset=utf-8", body, keepAlive);
+    }
+
+    /**
+     * Write a complete response with the given content type and flush it
+     */
+    public static void write(OutputStream output, int statusCode, String contentType, String body, boolean keepAlive) throws IOException {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + statusCode + " " + reasonPhrase(statusCode) + "\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Length: " + bodyBytes.length + "\r\n" +
+                (keepAlive ? "" : "Connection: close\r\n") +
+                "\r\n";
+        output.write(head.getBytes(StandardCharsets.US_ASCII));
+        output.write(bodyBytes);
+        output.flush();
+    }
+
+    /**
+     * A complete response turning a client away, telling it when to retry, and closing the connection
+     */
+    public static byte[] rejection(int statusCode, long retryAfterSeconds) {
+        return ("HTTP/1.1 " + statusCode + " " + reasonPhrase(statusCode) + "\r\n" +
+                "Retry-After: " + retryAfterSeconds + "\r\n" +
+                "Content-Length: 0\r\n" +
+                "Connection: close\r\n" +
+                "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static String reasonPhrase(int statusCode) {
+        switch (statusCode) {
+            case 100: return "Continue";
+            case 200: return "OK";
+            case 202: return "Accepted";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 408: return "Request Timeout";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            default: return "Unknown";
+        }
+    }
+}
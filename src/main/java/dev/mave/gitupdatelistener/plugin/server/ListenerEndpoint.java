@@ -0,0 +1,65 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * Where and how a {@link WebhookServer} listens: the address and port to bind, the accept backlog,
+ * and whether to set {@code SO_REUSEADDR} so a port still in TIME_WAIT can be bound again.
+ */
+public final class ListenerEndpoint {
+    public static final int DEFAULT_BACKLOG = 50;
+
+    private final String bindAddress;
+    private final int port;
+    private final int backlog;
+    private final boolean reuseAddress;
+
+    /**
+     * @param bindAddress an IP address or host name, "0.0.0.0" for every interface
+     * @param port        0 for an ephemeral port
+     */
+    public ListenerEndpoint(@NotNull String bindAddress, int port, int backlog, boolean reuseAddress) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.backlog = backlog;
+        this.reuseAddress = reuseAddress;
+    }
+
+    @NotNull
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public boolean isReuseAddress() {
+        return reuseAddress;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ListenerEndpoint)) return false;
+        ListenerEndpoint other = (ListenerEndpoint) o;
+        return port == other.port && backlog == other.backlog && reuseAddress == other.reuseAddress
+                && bindAddress.equals(other.bindAddress);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bindAddress, port, backlog, reuseAddress);
+    }
+
+    @Override
+    public String toString() {
+        return bindAddress + ":" + port;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how often each client address may send a request, with a token bucket per address.
+ * <p>
+ * A bucket holds up to a minute's worth of requests and refills evenly over the minute, so a client
+ * can burst up to the limit and then continues at its average rate. Addresses are forgotten once
+ * their bucket is full again, and the number tracked is capped so a flood from many addresses
+ * can't grow the table without bound. Past the cap, the addresses heard from longest ago are
+ * forgotten first, so the busy ones keep their limits.
+ */
+public final class RateLimiter {
+    static final int MAX_TRACKED_ADDRESSES = 4096;
+    /** Evicting this many more than needed keeps a flood from scanning the table on every request */
+    private static final int EVICTION_BATCH = MAX_TRACKED_ADDRESSES / 8;
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<InetAddress, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile int requestsPerMinute;
+
+    /**
+     * @param requestsPerMinute the limit per address, 0 for no limit
+     */
+    public RateLimiter(int requestsPerMinute) {
+        this.requestsPerMinute = Math.max(0, requestsPerMinute);
+    }
+
+    public void setRequestsPerMinute(int requestsPerMinute) {
+        this.requestsPerMinute = Math.max(0, requestsPerMinute);
+    }
+
+    /**
+     * Take one request's worth from the address's bucket
+     *
+     * @return 0 if the request may go ahead, otherwise the seconds until the address may try again
+     */
+    public long acquire(InetAddress address) {
+        return acquire(address, System.nanoTime());
+    }
+
+    long acquire(InetAddress address, long now) {
+        int limit = requestsPerMinute;
+        if (limit <= 0) {
+            return 0;
+        }
+        if (buckets.size() >= MAX_TRACKED_ADDRESSES) {
+            prune(now, limit);
+        }
+        Bucket bucket = buckets.computeIfAbsent(address, k -> new Bucket(limit, now));
+        synchronized (bucket) {
+            bucket.refill(now, limit);
+            bucket.lastSeenNanos = now;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            double nanosPerToken = (double) MINUTE_NANOS / limit;
+            return Math.max(1, (long) Math.ceil((1 - bucket.tokens) * nanosPerToken / TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    private void prune(long now, int limit) {
+        buckets.values().removeIf(bucket -> {
+            synchronized (bucket) {
+                bucket.refill(now, limit);
+                return bucket.tokens >= limit;
+            }
+        });
+        int excess = buckets.size() - (MAX_TRACKED_ADDRESSES - EVICTION_BATCH);
+        if (excess > 0) {
+            evictLeastRecentlySeen(now, excess);
+        }
+    }
+
+    /**
+     * Forget the addresses that sent their last request longest ago, which then start with a full bucket
+     */
+    private void evictLeastRecentlySeen(long now, int count) {
+        // Snapshot the ages first, requests keep updating them while this sorts
+        List<Map.Entry<InetAddress, Long>> ages = new ArrayList<>(buckets.size());
+        for (Map.Entry<InetAddress, Bucket> entry : buckets.entrySet()) {
+            long lastSeenNanos;
+            synchronized (entry.getValue()) {
+                lastSeenNanos = entry.getValue().lastSeenNanos;
+            }
+            ages.add(Map.entry(entry.getKey(), now - lastSeenNanos));
+        }
+        ages.sort(Map.Entry.<InetAddress, Long>comparingByValue().reversed());
+        for (int i = 0; i < count && i < ages.size(); i++) {
+            buckets.remove(ages.get(i).getKey());
+        }
+    }
+
+    int getTrackedAddresses() {
+        return buckets.size();
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long updatedNanos;
+        long lastSeenNanos;
+
+        Bucket(int limit, long now) {
+            this.tokens = limit;
+            this.updatedNanos = now;
+            this.lastSeenNanos = now;
+        }
+
+        void refill(long now, int limit) {
+            tokens = Math.min(limit, tokens + (double) (now - updatedNanos) * limit / MINUTE_NANOS);
+            updatedNanos = now;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request body held in pooled buffers rather than one copied array.
+ * <p>
+ * Readers get a view over the buffers through {@link #chunks()}. The owner must call {@link #close()}
+ * when it is done, after which the buffers go back to the pool and the view must not be used.
+ */
+public final class RequestBody implements AutoCloseable {
+    private static final ByteBuffer[] NO_CHUNKS = new ByteBuffer[0];
+
+    private final BufferPool pool;
+    private final List<ByteBuffer> filling = new ArrayList<>();
+    private ByteBuffer[] chunks;
+    private long size;
+
+    RequestBody(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * The last buffer if it still has room, otherwise a fresh one from the pool
+     */
+    ByteBuffer writableChunk() {
+        int last = filling.size() - 1;
+        if (last >= 0 && filling.get(last).hasRemaining()) {
+            return filling.get(last);
+        }
+        ByteBuffer chunk = pool.acquire();
+        filling.add(chunk);
+        return chunk;
+    }
+
+    void advance(int bytes) {
+        size += bytes;
+    }
+
+    /**
+     * Flip every buffer for reading once the whole body has arrived
+     */
+    void finish() {
+        chunks = filling.isEmpty() ? NO_CHUNKS : filling.toArray(NO_CHUNKS);
+        for (ByteBuffer chunk : chunks) {
+            chunk.flip();
+        }
+    }
+
+    /**
+     * The body's bytes, read back to back from each buffer's position to its limit
+     */
+    @NotNull
+    public ByteBuffer[] chunks() {
+        if (chunks == null) {
+            throw new IllegalStateException("Body has not been fully read");
+        }
+        return chunks;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        for (ByteBuffer chunk : filling) {
+            pool.release(chunk);
+        }
+        filling.clear();
+        chunks = NO_CHUNKS;
+        size = 0;
+    }
+}
@@ -0,0 +1,350 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts webhook connections on a dedicated thread and hands each one to a worker thread,
+ * so a slow client never holds up the deliveries queued behind it.
+ * <p>
+ * Admission is decided on the accepting thread, before a worker is involved. The handler may turn
+ * a client away with 429, and when every worker has been busy for a while, connections are answered
+ * with 503 instead of piling up in the socket backlog. Both carry a Retry-After.
+ * <p>
+ * A running server can be replaced by one with other settings without refusing a delivery: the new
+ * server binds first, or takes over the listening socket if the address and port stay the same,
+ * and only then does the old one stop accepting and drain the requests it is still serving.
+ */
+public final class WebhookServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getInstance(WebhookServer.class);
+
+    /** How long close() waits for in-flight connections before giving up on them */
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+    /** How long a connection may wait for a free worker before it is turned away */
+    private static final long ADMISSION_WAIT_MS = 1000;
+    private static final long BUSY_RETRY_AFTER_SECONDS = 5;
+    /** How often the acceptor looks up from accept() to see whether it should stop */
+    private static final int ACCEPT_POLL_MS = 500;
+    /** How long a replaced server keeps serving the requests it had already accepted */
+    private static final long DRAIN_TIMEOUT_MS = 30_000;
+
+    /**
+     * Handles a single accepted connection. The server closes the socket once this returns.
+     */
+    @FunctionalInterface
+    public interface ConnectionHandler {
+        /**
+         * @param acceptedNanos {@link System#nanoTime()} when the connection was accepted
+         */
+        void handle(Socket client, long acceptedNanos) throws Exception;
+
+        /**
+         * Decide on the accepting thread whether to serve a client at all. Must be cheap and must not block.
+         *
+         * @return 0 to admit the connection, otherwise the seconds after which the client may retry,
+         * and it is answered with 429
+         */
+        default long admit(InetAddress address) {
+            return 0;
+        }
+
+        /**
+         * Called on the accepting thread after a connection was turned away with the given status
+         */
+        default void rejected(int statusCode) {
+        }
+    }
+
+    private final String name;
+    private final ListenerEndpoint endpoint;
+    private final int maxConnections;
+    private final ConnectionHandler handler;
+    private final Semaphore connectionPermits;
+    private final ExecutorService workers;
+    private final Set<Socket> activeClients = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+
+    private volatile ServerSocket server;
+    /** Whether this server closes the listening socket, false once a replacement has taken it over */
+    private volatile boolean ownsSocket = true;
+    private Thread acceptorThread;
+
+    public WebhookServer(String name, ListenerEndpoint endpoint, int maxConnections, ConnectionHandler handler) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1: " + maxConnections);
+        }
+        this.name = name;
+        this.endpoint = endpoint;
+        this.maxConnections = maxConnections;
+        this.handler = handler;
+        this.connectionPermits = new Semaphore(maxConnections);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // The permits already cap the connections in flight. The queue only covers the moment between a worker
+        // releasing its permit and its thread becoming idle, which would otherwise reject the next connection.
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + "-Worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.workers = pool;
+    }
+
+    /**
+     * Bind the server socket and start accepting connections
+     */
+    public void start() throws IOException {
+        startReplacing(null);
+    }
+
+    /**
+     * Start accepting in place of another server, which then stops accepting and drains in the background.
+     * If binding fails, the other server is left running untouched and this one can be started again later.
+     *
+     * @param previous the running server to replace, or null to simply start
+     */
+    public void startReplacing(@Nullable WebhookServer previous) throws IOException {
+        if (!isRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Server already started");
+        }
+        boolean takeOver = previous != null && previous.isListeningOn(endpoint);
+        try {
+            server = takeOver ? previous.server : bind();
+        } catch (IOException e) {
+            // The workers only start threads once a connection is accepted, so there's nothing to shut down
+            isRunning.set(false);
+            throw e;
+        }
+        acceptorThread = new Thread(this::acceptLoop, name);
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+
+        if (takeOver) {
+            // Both acceptors take connections from the socket until the old one notices it has been replaced
+            previous.ownsSocket = false;
+            if (previous.endpoint.getBacklog() != endpoint.getBacklog() || previous.endpoint.isReuseAddress() != endpoint.isReuseAddress()) {
+                LOG.info("Kept the listening socket on " + endpoint + ", its backlog and address reuse apply once it is bound anew");
+            }
+        }
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    /**
+     * Whether this server's listening socket can serve the given endpoint, going by the port actually bound
+     */
+    private boolean isListeningOn(ListenerEndpoint other) {
+        if (!isRunning() || !endpoint.getBindAddress().equals(other.getBindAddress())) {
+            return false;
+        }
+        return other.getPort() == 0 ? endpoint.getPort() == 0 : other.getPort() == getLocalPort();
+    }
+
+    private ServerSocket bind() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        try {
+            socket.setReuseAddress(endpoint.isReuseAddress());
+            socket.bind(new InetSocketAddress(InetAddress.getByName(endpoint.getBindAddress()), endpoint.getPort()),
+                    endpoint.getBacklog());
+            socket.setSoTimeout(ACCEPT_POLL_MS);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * Where and how this server was asked to listen
+     */
+    public ListenerEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+
+    /**
+     * The port the server is actually bound to, which differs from the configured one when it was 0
+     */
+    public int getLocalPort() {
+        ServerSocket socket = server;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+
+    private void acceptLoop() {
+        while (isRunning.get()) {
+            boolean admitted;
+            try {
+                // Give busy workers a moment to free up, excess clients wait in the socket backlog meanwhile
+                admitted = connectionPermits.tryAcquire(ADMISSION_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            Socket client;
+            try {
+                client = server.accept();
+            } catch (SocketTimeoutException e) {
+                if (admitted) connectionPermits.release();
+                continue;
+            } catch (IOException e) {
+                if (admitted) connectionPermits.release();
+                if (!isRunning.get()) break;
+                if (e instanceof SocketException && server.isClosed()) break;
+                LOG.warn("Error accepting webhook connection", e);
+                continue;
+            }
+
+            long acceptedNanos = System.nanoTime();
+            long retryAfter = handler.admit(client.getInetAddress());
+            if (retryAfter > 0) {
+                if (admitted) connectionPermits.release();
+                turnAway(client, 429, retryAfter);
+                continue;
+            }
+            if (!admitted && !connectionPermits.tryAcquire()) {
+                turnAway(client, 503, BUSY_RETRY_AFTER_SECONDS);
+                continue;
+            }
+
+            try {
+                workers.execute(() -> serve(client, acceptedNanos));
+            } catch (RejectedExecutionException e) {
+                connectionPermits.release();
+                closeQuietly(client);
+                if (workers.isShutdown()) break;
+                LOG.warn("Dropped webhook connection, no worker available", e);
+            }
+        }
+    }
+
+    /**
+     * Answer a connection without reading from it. The response fits the socket's send buffer, so this doesn't block.
+     */
+    private void turnAway(Socket client, int statusCode, long retryAfterSeconds) {
+        try (client) {
+            OutputStream output = client.getOutputStream();
+            output.write(HttpResponse.rejection(statusCode, retryAfterSeconds));
+            output.flush();
+            client.shutdownOutput();
+        } catch (IOException e) {
+            LOG.debug("Error turning away webhook connection", e);
+        }
+        LOG.debug("Turned away webhook connection from " + client.getInetAddress() + " with " + statusCode);
+        handler.rejected(statusCode);
+    }
+
+    private void serve(Socket client, long acceptedNanos) {
+        activeClients.add(client);
+        try (client) {
+            handler.handle(client, acceptedNanos);
+        } catch (Exception e) {
+            if (isRunning.get()) {
+                LOG.error("Error handling incoming webhook request", e);
+            }
+        } finally {
+            activeClients.remove(client);
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * Stop accepting and let the requests already accepted finish in the background, after a replacement has started
+     */
+    private void retire() {
+        if (!isRunning.getAndSet(false)) {
+            return;
+        }
+        if (ownsSocket) {
+            closeQuietly(server);
+        }
+        Thread drain = new Thread(() -> {
+            try {
+                // A connection accepted just before stopping is still handed to a worker
+                acceptorThread.join();
+                workers.shutdown();
+                if (!workers.awaitTermination(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Replaced webhook listener still had connections open after " + DRAIN_TIMEOUT_MS + " ms, closing them");
+                    activeClients.forEach(WebhookServer::closeQuietly);
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+            }
+        }, name + "-Drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    /**
+     * Stop accepting, close the server socket and wait briefly for in-flight connections to finish
+     */
+    @Override
+    public void close() {
+        if (!isRunning.getAndSet(false)) {
+            return;
+        }
+        if (ownsSocket) {
+            closeQuietly(server);
+        }
+        if (acceptorThread != null) {
+            acceptorThread.interrupt();
+        }
+        try {
+            if (acceptorThread != null) {
+                acceptorThread.join(ACCEPT_POLL_MS * 2L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                // Blocking socket reads ignore interrupts, so close the stragglers' sockets too
+                activeClients.forEach(WebhookServer::closeQuietly);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            LOG.warn("Error closing socket", e);
+        }
+    }
+}
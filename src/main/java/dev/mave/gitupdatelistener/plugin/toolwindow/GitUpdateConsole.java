@@ -0,0 +1,67 @@
+package dev.mave.gitupdatelistener.plugin.toolwindow;
+
+import com.intellij.execution.filters.TextConsoleBuilderFactory;
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The per-project console that git output and trigger progress are streamed into.
+ * It is shown in the Git Update Listener tool window.
+ */
+@Service(Service.Level.PROJECT)
+public final class GitUpdateConsole implements Disposable {
+    private final Project project;
+    private ConsoleView console;
+
+    public GitUpdateConsole(Project project) {
+        this.project = project;
+    }
+
+    public static GitUpdateConsole getInstance(@NotNull Project project) {
+        return project.getService(GitUpdateConsole.class);
+    }
+
+    /**
+     * Get the console, creating it on the EDT if needed. Printing to it is safe from any thread.
+     */
+    @NotNull
+    public ConsoleView getConsole() {
+        synchronized (this) {
+            if (console != null) {
+                return console;
+            }
+        }
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            synchronized (this) {
+                if (console == null && !project.isDisposed()) {
+                    console = TextConsoleBuilderFactory.getInstance().createBuilder(project).getConsole();
+                    Disposer.register(this, console);
+                }
+            }
+        }, ModalityState.any());
+        synchronized (this) {
+            if (console == null) {
+                throw new IllegalStateException("Project is disposed: " + project.getName());
+            }
+            return console;
+        }
+    }
+
+    /**
+     * Print a status line, marked as system output
+     */
+    public void printStatus(@NotNull String message) {
+        getConsole().print(message + "\n", ConsoleViewContentType.SYSTEM_OUTPUT);
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
@@ -0,0 +1,31 @@
+package dev.mave.gitupdatelistener.plugin.toolwindow;
+
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import dev.mave.gitupdatelistener.plugin.TriggerService;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the Git Update Listener tool window, which shows the live git output of triggered reruns
+ * and a summary of the listener's latency metrics
+ */
+public class GitUpdateToolWindowFactory implements ToolWindowFactory, DumbAware {
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        ConsoleView console = GitUpdateConsole.getInstance(project).getConsole();
+        Content content = ContentFactory.getInstance().createContent(console.getComponent(), "Git Sync", false);
+        content.setCloseable(false);
+        toolWindow.getContentManager().addContent(content);
+
+        MetricsPanel metricsPanel = new MetricsPanel(TriggerService.getInstance().getMetrics());
+        Content metricsContent = ContentFactory.getInstance().createContent(metricsPanel, "Metrics", false);
+        metricsContent.setCloseable(false);
+        metricsContent.setDisposer(metricsPanel);
+        toolWindow.getContentManager().addContent(metricsContent);
+    }
+}
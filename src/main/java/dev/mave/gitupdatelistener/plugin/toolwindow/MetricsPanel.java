@@ -0,0 +1,75 @@
+package dev.mave.gitupdatelistener.plugin.toolwindow;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.ui.JBUI;
+import dev.mave.gitupdatelistener.plugin.metrics.LatencyHistogram;
+import dev.mave.gitupdatelistener.plugin.metrics.TriggerMetrics;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Locale;
+
+/**
+ * A summary of the listener's metrics, refreshed every couple of seconds while the tool window exists
+ */
+public class MetricsPanel extends JPanel implements Disposable {
+    private static final int REFRESH_INTERVAL_MS = 2000;
+    private static final String[] COLUMNS = {"Stage", "Count", "Mean (ms)", "p50 (ms)", "p99 (ms)"};
+
+    private final TriggerMetrics metrics;
+    private final DefaultTableModel model = new DefaultTableModel(COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JBLabel totals = new JBLabel();
+    private final Timer timer;
+
+    public MetricsPanel(@NotNull TriggerMetrics metrics) {
+        super(new BorderLayout());
+        this.metrics = metrics;
+        totals.setBorder(JBUI.Borders.empty(4, 8));
+        add(totals, BorderLayout.NORTH);
+        add(new JBScrollPane(new JBTable(model)), BorderLayout.CENTER);
+
+        refresh();
+        timer = new Timer(REFRESH_INTERVAL_MS, e -> refresh());
+        timer.start();
+    }
+
+    private void refresh() {
+        totals.setText(String.format(Locale.ROOT,
+                "Deliveries: %d   Rejected: %d   Failed: %d   Restarts: %d succeeded, %d failed, %d cancelled   Pulled only: %d",
+                metrics.getDeliveries(), metrics.getRejectedDeliveries(), metrics.getFailedDeliveries(),
+                metrics.getTriggers(TriggerMetrics.Outcome.SUCCEEDED),
+                metrics.getTriggers(TriggerMetrics.Outcome.FAILED),
+                metrics.getTriggers(TriggerMetrics.Outcome.CANCELLED),
+                metrics.getTriggers(TriggerMetrics.Outcome.PULLED_ONLY)));
+
+        TriggerMetrics.Stage[] stages = TriggerMetrics.Stage.values();
+        model.setRowCount(stages.length);
+        for (int row = 0; row < stages.length; row++) {
+            LatencyHistogram.Snapshot snapshot = metrics.getHistogram(stages[row]).snapshot();
+            model.setValueAt(stages[row].name().toLowerCase(Locale.ROOT), row, 0);
+            model.setValueAt(snapshot.getCount(), row, 1);
+            model.setValueAt(millis(snapshot.getMeanMillis()), row, 2);
+            model.setValueAt(millis(snapshot.getQuantileMillis(0.5)), row, 3);
+            model.setValueAt(millis(snapshot.getQuantileMillis(0.99)), row, 4);
+        }
+    }
+
+    private static String millis(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    @Override
+    public void dispose() {
+        timer.stop();
+    }
+}
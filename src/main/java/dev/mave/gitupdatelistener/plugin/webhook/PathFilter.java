@@ -0,0 +1,77 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides from the paths a push changed whether it concerns a rule.
+ * <p>
+ * A push is relevant if any changed path matches an include glob, or there are none, and no exclude glob.
+ * Globs are comma-separated and relative to the repository root, with the same syntax as ref patterns.
+ * A glob without a slash matches a file name in any directory, so "*.md" covers "docs/setup.md" too,
+ * while a leading slash anchors one at the root.
+ * Each list is compiled into a single pattern once.
+ */
+public final class PathFilter {
+    private final Pattern include;
+    private final Pattern exclude;
+
+    private PathFilter(@Nullable Pattern include, @Nullable Pattern exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    /**
+     * Compile the include and exclude globs of a rule
+     *
+     * @return the filter, or null if neither list has a glob and every push is relevant
+     */
+    @Nullable
+    public static PathFilter compile(@Nullable String includeGlobs, @Nullable String excludeGlobs) {
+        Pattern include = compileList(includeGlobs);
+        Pattern exclude = compileList(excludeGlobs);
+        return include == null && exclude == null ? null : new PathFilter(include, exclude);
+    }
+
+    /**
+     * Whether any of the paths passes the filter
+     */
+    public boolean matchesAny(@NotNull Collection<String> paths) {
+        for (String path : paths) {
+            if ((include == null || include.matcher(path).matches()) && (exclude == null || !exclude.matcher(path).matches())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static Pattern compileList(@Nullable String globs) {
+        if (globs == null || globs.isBlank()) {
+            return null;
+        }
+        List<String> alternatives = new ArrayList<>();
+        for (String glob : globs.split(",")) {
+            glob = glob.trim();
+            if (glob.isEmpty()) {
+                continue;
+            }
+            if (glob.indexOf('/') < 0) {
+                glob = "**/" + glob;
+            } else if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.endsWith("/")) {
+                // A directory stands for everything below it
+                glob = glob + "**";
+            }
+            alternatives.add("(?:" + RuleIndex.compileGlob(glob).pattern() + ")");
+        }
+        return alternatives.isEmpty() ? null : Pattern.compile(String.join("|", alternatives));
+    }
+}
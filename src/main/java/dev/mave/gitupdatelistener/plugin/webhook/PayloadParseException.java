@@ -0,0 +1,12 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a webhook payload is not well-formed JSON
+ */
+public class PayloadParseException extends IOException {
+    public PayloadParseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,150 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+
+/**
+ * The fields of a GitHub push payload that the listener acts on. Fields that were not
+ * requested from the parser, or are absent from the payload, are null.
+ */
+public final class PushEvent {
+    /** GitHub lists at most this many commits in a push payload */
+    public static final int MAX_LISTED_COMMITS = 2048;
+    private static final String NO_COMMIT = "0000000000000000000000000000000000000000";
+
+    private final String ref;
+    private final String repositoryFullName;
+    private final String headCommitId;
+    private final String headCommitMessage;
+    private final String headCommitAuthorName;
+    private final Set<String> changedPaths;
+    private final int listedCommits;
+    private final String before;
+    private final String after;
+    private final boolean forced;
+
+    public PushEvent(@Nullable String ref,
+                     @Nullable String repositoryFullName,
+                     @Nullable String headCommitId,
+                     @Nullable String headCommitMessage,
+                     @Nullable String headCommitAuthorName,
+                     @Nullable Set<String> changedPaths) {
+        this(ref, repositoryFullName, headCommitId, headCommitMessage, headCommitAuthorName, changedPaths, 0, null, null, false);
+    }
+
+    public PushEvent(@Nullable String ref,
+                     @Nullable String repositoryFullName,
+                     @Nullable String headCommitId,
+                     @Nullable String headCommitMessage,
+                     @Nullable String headCommitAuthorName,
+                     @Nullable Set<String> changedPaths,
+                     int listedCommits,
+                     @Nullable String before,
+                     @Nullable String after,
+                     boolean forced) {
+        this.ref = ref;
+        this.repositoryFullName = repositoryFullName;
+        this.headCommitId = headCommitId;
+        this.headCommitMessage = headCommitMessage;
+        this.headCommitAuthorName = headCommitAuthorName;
+        this.changedPaths = changedPaths;
+        this.listedCommits = listedCommits;
+        this.before = before;
+        this.after = after;
+        this.forced = forced;
+    }
+
+    /**
+     * The full ref that was pushed, e.g. "refs/heads/main"
+     */
+    @Nullable
+    public String getRef() {
+        return ref;
+    }
+
+    /**
+     * The repository as "owner/name"
+     */
+    @Nullable
+    public String getRepositoryFullName() {
+        return repositoryFullName;
+    }
+
+    @Nullable
+    public String getHeadCommitId() {
+        return headCommitId;
+    }
+
+    @Nullable
+    public String getHeadCommitMessage() {
+        return headCommitMessage;
+    }
+
+    @Nullable
+    public String getHeadCommitAuthorName() {
+        return headCommitAuthorName;
+    }
+
+    /**
+     * Every path added, modified or removed by the commits listed in the payload
+     */
+    @Nullable
+    public Set<String> getChangedPaths() {
+        return changedPaths;
+    }
+
+    /**
+     * How many commits the payload listed, at most {@link #MAX_LISTED_COMMITS}
+     */
+    public int getListedCommits() {
+        return listedCommits;
+    }
+
+    /**
+     * Whether the push rewrote the ref's history
+     */
+    public boolean isForced() {
+        return forced;
+    }
+
+    /**
+     * Whether {@link #getChangedPaths()} is everything that changed between {@link #getBefore()} and {@link #getAfter()}.
+     * It isn't when GitHub truncated the commit list, when the branch was just created, or when a forced
+     * push dropped commits whose changes are undone without being listed.
+     */
+    public boolean hasAllChangedPaths() {
+        return changedPaths != null && listedCommits > 0 && listedCommits < MAX_LISTED_COMMITS
+                && !forced && hasPreviousCommit();
+    }
+
+    /**
+     * Whether the ref existed before the push, so there is a commit to compare against
+     */
+    public boolean hasPreviousCommit() {
+        return before != null && !NO_COMMIT.equals(before);
+    }
+
+    /**
+     * Whether the push deleted the ref, leaving nothing to pull
+     */
+    public boolean isDeletion() {
+        return NO_COMMIT.equals(after);
+    }
+
+    /**
+     * The commit the ref pointed to before the push, all zeros if it was just created
+     */
+    @Nullable
+    public String getBefore() {
+        return before;
+    }
+
+    /**
+     * The commit the ref points to after the push, all zeros if it was deleted
+     */
+    @Nullable
+    public String getAfter() {
+        return after;
+    }
+}
@@ -0,0 +1,24 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+/**
+ * The push payload fields {@link PushPayloadParser} knows how to extract
+ */
+public enum PushField {
+    /** {@code ref} */
+    REF,
+    /** {@code repository.full_name} */
+    REPOSITORY_FULL_NAME,
+    /** {@code head_commit.id} */
+    HEAD_COMMIT_ID,
+    /** {@code head_commit.message} */
+    HEAD_COMMIT_MESSAGE,
+    /** {@code head_commit.author.name} */
+    HEAD_COMMIT_AUTHOR_NAME,
+    /**
+     * The union of {@code commits[].added}, {@code commits[].modified} and {@code commits[].removed},
+     * along with how many commits were listed
+     */
+    CHANGED_PATHS,
+    /** {@code before}, {@code after} and {@code forced}: what the ref pointed to and whether history was rewritten */
+    COMPARE
+}
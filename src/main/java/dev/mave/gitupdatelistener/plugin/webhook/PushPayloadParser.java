@@ -0,0 +1,515 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Pulls the fields the listener needs out of a push payload in a single pass over its raw UTF-8 bytes.
+ * <p>
+ * Values that are not requested are skipped without being decoded, object keys are compared as bytes,
+ * and parsing stops as soon as every requested field has been seen. String escapes, including
+ * surrogate pairs, are decoded properly. An instance reuses its scratch buffers and is not thread-safe.
+ */
+public final class PushPayloadParser {
+    private static final byte[] REF = ascii("ref");
+    private static final byte[] REPOSITORY = ascii("repository");
+    private static final byte[] FULL_NAME = ascii("full_name");
+    private static final byte[] HEAD_COMMIT = ascii("head_commit");
+    private static final byte[] ID = ascii("id");
+    private static final byte[] MESSAGE = ascii("message");
+    private static final byte[] AUTHOR = ascii("author");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] COMMITS = ascii("commits");
+    private static final byte[] ADDED = ascii("added");
+    private static final byte[] MODIFIED = ascii("modified");
+    private static final byte[] REMOVED = ascii("removed");
+    private static final byte[] BEFORE = ascii("before");
+    private static final byte[] AFTER = ascii("after");
+    private static final byte[] FORCED = ascii("forced");
+    /** All three compare fields seen, see {@link #compareSeen} */
+    private static final int COMPARE_COMPLETE = 0b111;
+
+    private static final int NO_BYTE = -2;
+
+    /** The payload as one or more buffers read back to back, from each one's position to its limit */
+    private ByteBuffer[] chunks;
+    private int chunkIndex;
+    private ByteBuffer chunk;
+    private int chunkPosition;
+    private int chunkLimit;
+    private int pushedBack = NO_BYTE;
+    private long offset;
+
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    private Set<PushField> pending;
+    private String ref;
+    private String repositoryFullName;
+    private String headCommitId;
+    private String headCommitMessage;
+    private String headCommitAuthorName;
+    private Set<String> changedPaths;
+    private int listedCommits;
+    private String before;
+    private String after;
+    private boolean forced;
+    /** Which of before, after and forced have been seen, one bit each */
+    private int compareSeen;
+
+    /**
+     * Parse a payload held in a single array
+     */
+    @NotNull
+    public PushEvent parse(@NotNull byte[] payload, @NotNull Set<PushField> fields) throws PayloadParseException {
+        return parse(new ByteBuffer[]{ByteBuffer.wrap(payload)}, fields);
+    }
+
+    /**
+     * Parse a payload split across buffers, which are read without changing their positions
+     */
+    @NotNull
+    public PushEvent parse(@NotNull ByteBuffer[] payload, @NotNull Set<PushField> fields) throws PayloadParseException {
+        reset(payload, fields);
+        try {
+            int first = nextNonWhitespace();
+            if (first != '{') {
+                throw error("Expected a JSON object");
+            }
+            parseRoot();
+            return new PushEvent(ref, repositoryFullName, headCommitId, headCommitMessage, headCommitAuthorName,
+                    changedPaths, listedCommits, before, after, forced);
+        } finally {
+            // Don't keep the caller's buffers reachable once parsing is over
+            chunks = null;
+            chunk = null;
+        }
+    }
+
+    private void reset(ByteBuffer[] payload, Set<PushField> fields) {
+        chunks = payload;
+        chunkIndex = -1;
+        chunk = null;
+        chunkPosition = 0;
+        chunkLimit = 0;
+        pushedBack = NO_BYTE;
+        offset = 0;
+        pending = fields.isEmpty() ? EnumSet.noneOf(PushField.class) : EnumSet.copyOf(fields);
+        ref = null;
+        repositoryFullName = null;
+        headCommitId = null;
+        headCommitMessage = null;
+        headCommitAuthorName = null;
+        changedPaths = fields.contains(PushField.CHANGED_PATHS) ? new LinkedHashSet<>() : null;
+        listedCommits = 0;
+        before = null;
+        after = null;
+        forced = false;
+        compareSeen = 0;
+    }
+
+    private void parseRoot() throws PayloadParseException {
+        if (pending.isEmpty() || emptyObject()) return;
+        do {
+            readKey();
+            expectColon();
+            if (keyIs(REF) && pending.contains(PushField.REF)) {
+                ref = readStringOrNull();
+                pending.remove(PushField.REF);
+            } else if (keyIs(REPOSITORY) && pending.contains(PushField.REPOSITORY_FULL_NAME)) {
+                parseRepository();
+            } else if (keyIs(HEAD_COMMIT) && wantsHeadCommit()) {
+                parseHeadCommit();
+            } else if (keyIs(COMMITS) && pending.contains(PushField.CHANGED_PATHS)) {
+                parseCommits();
+                pending.remove(PushField.CHANGED_PATHS);
+            } else if (pending.contains(PushField.COMPARE) && (keyIs(BEFORE) || keyIs(AFTER) || keyIs(FORCED))) {
+                parseCompareField();
+            } else {
+                skipValue(nextNonWhitespace());
+            }
+            if (pending.isEmpty()) return;
+        } while (nextMember('}'));
+    }
+
+    private void parseCompareField() throws PayloadParseException {
+        if (keyIs(BEFORE)) {
+            before = readStringOrNull();
+            compareSeen |= 1;
+        } else if (keyIs(AFTER)) {
+            after = readStringOrNull();
+            compareSeen |= 2;
+        } else {
+            int first = nextNonWhitespace();
+            forced = first == 't';
+            skipValue(first);
+            compareSeen |= 4;
+        }
+        if (compareSeen == COMPARE_COMPLETE) {
+            pending.remove(PushField.COMPARE);
+        }
+    }
+
+    private void parseRepository() throws PayloadParseException {
+        if (!beginObject()) {
+            pending.remove(PushField.REPOSITORY_FULL_NAME);
+            return;
+        }
+        do {
+            readKey();
+            expectColon();
+            if (keyIs(FULL_NAME)) {
+                repositoryFullName = readStringOrNull();
+                pending.remove(PushField.REPOSITORY_FULL_NAME);
+            } else {
+                skipValue(nextNonWhitespace());
+            }
+        } while (nextMember('}'));
+        pending.remove(PushField.REPOSITORY_FULL_NAME);
+    }
+
+    private boolean wantsHeadCommit() {
+        return pending.contains(PushField.HEAD_COMMIT_ID)
+                || pending.contains(PushField.HEAD_COMMIT_MESSAGE)
+                || pending.contains(PushField.HEAD_COMMIT_AUTHOR_NAME);
+    }
+
+    private void parseHeadCommit() throws PayloadParseException {
+        // head_commit is null when a branch is deleted
+        if (beginObject()) {
+            do {
+                readKey();
+                expectColon();
+                if (keyIs(ID)) {
+                    headCommitId = readStringOrNull();
+                } else if (keyIs(MESSAGE)) {
+                    headCommitMessage = readStringOrNull();
+                } else if (keyIs(AUTHOR)) {
+                    parseAuthor();
+                } else {
+                    skipValue(nextNonWhitespace());
+                }
+            } while (nextMember('}'));
+        }
+        pending.remove(PushField.HEAD_COMMIT_ID);
+        pending.remove(PushField.HEAD_COMMIT_MESSAGE);
+        pending.remove(PushField.HEAD_COMMIT_AUTHOR_NAME);
+    }
+
+    private void parseAuthor() throws PayloadParseException {
+        if (!beginObject()) return;
+        do {
+            readKey();
+            expectColon();
+            if (keyIs(NAME)) {
+                headCommitAuthorName = readStringOrNull();
+            } else {
+                skipValue(nextNonWhitespace());
+            }
+        } while (nextMember('}'));
+    }
+
+    private void parseCommits() throws PayloadParseException {
+        int first = nextNonWhitespace();
+        if (first == 'n') {
+            skipValue(first);
+            return;
+        }
+        if (first != '[') throw error("Expected an array of commits");
+        if (emptyArray()) return;
+        do {
+            listedCommits++;
+            if (!beginObject()) continue;
+            do {
+                readKey();
+                expectColon();
+                if (keyIs(ADDED) || keyIs(MODIFIED) || keyIs(REMOVED)) {
+                    parsePathList();
+                } else {
+                    skipValue(nextNonWhitespace());
+                }
+            } while (nextMember('}'));
+        } while (nextMember(']'));
+    }
+
+    private void parsePathList() throws PayloadParseException {
+        int first = nextNonWhitespace();
+        if (first == 'n') {
+            skipValue(first);
+            return;
+        }
+        if (first != '[') throw error("Expected an array of paths");
+        if (emptyArray()) return;
+        do {
+            String path = readStringOrNull();
+            if (path != null) {
+                changedPaths.add(path);
+            }
+        } while (nextMember(']'));
+    }
+
+    // --- Structure helpers ---
+
+    /**
+     * Consume the start of an object value, or a null in its place
+     *
+     * @return true if an object with at least one member follows
+     */
+    private boolean beginObject() throws PayloadParseException {
+        int first = nextNonWhitespace();
+        if (first == 'n') {
+            skipValue(first);
+            return false;
+        }
+        if (first != '{') throw error("Expected an object");
+        return !emptyObject();
+    }
+
+    private boolean emptyObject() throws PayloadParseException {
+        int next = nextNonWhitespace();
+        if (next == '}') return true;
+        unread(next);
+        return false;
+    }
+
+    private boolean emptyArray() throws PayloadParseException {
+        int next = nextNonWhitespace();
+        if (next == ']') return true;
+        unread(next);
+        return false;
+    }
+
+    /**
+     * After a member or element, consume the separator
+     *
+     * @return true if another member follows, false if the container closed
+     */
+    private boolean nextMember(char close) throws PayloadParseException {
+        int next = nextNonWhitespace();
+        if (next == ',') return true;
+        if (next == close) return false;
+        throw error("Expected ',' or '" + close + "'");
+    }
+
+    private void expectColon() throws PayloadParseException {
+        if (nextNonWhitespace() != ':') throw error("Expected ':'");
+    }
+
+    /**
+     * Read an object key into the scratch buffer, decoded
+     */
+    private void readKey() throws PayloadParseException {
+        if (nextNonWhitespace() != '"') throw error("Expected an object key");
+        readStringBytes(true);
+    }
+
+    private boolean keyIs(byte[] name) {
+        return scratchLength == name.length && Arrays.equals(scratch, 0, scratchLength, name, 0, name.length);
+    }
+
+    private String readStringOrNull() throws PayloadParseException {
+        int first = nextNonWhitespace();
+        if (first == '"') {
+            readStringBytes(true);
+            return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+        }
+        skipValue(first);
+        return null;
+    }
+
+    /**
+     * Consume the rest of any JSON value whose first byte has already been read
+     */
+    private void skipValue(int first) throws PayloadParseException {
+        if (first == '"') {
+            readStringBytes(false);
+            return;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                int b = next();
+                if (b == '"') {
+                    readStringBytes(false);
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                } else if (b < 0) {
+                    throw error("Unterminated container");
+                }
+            }
+            return;
+        }
+        if (first < 0 || first == ',' || first == '}' || first == ']' || first == ':') {
+            throw error("Expected a value");
+        }
+        // Number or literal: runs until the next delimiter
+        while (true) {
+            int b = next();
+            if (b < 0) return;
+            if (b == ',' || b == '}' || b == ']' || isWhitespace(b)) {
+                unread(b);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read a string body after its opening quote, decoding it into the scratch buffer when capture is set
+     */
+    private void readStringBytes(boolean capture) throws PayloadParseException {
+        scratchLength = 0;
+        while (true) {
+            int b = next();
+            if (b == '"') return;
+            if (b < 0) throw error("Unterminated string");
+            if (b != '\\') {
+                if (capture) append(b);
+                continue;
+            }
+
+            int escaped = next();
+            if (escaped == 'u') {
+                readUnicodeEscape(capture);
+            } else {
+                readSimpleEscape(escaped, capture);
+            }
+        }
+    }
+
+    /**
+     * Decode an escape other than \\uXXXX, given the character after its backslash
+     */
+    private void readSimpleEscape(int escaped, boolean capture) throws PayloadParseException {
+        switch (escaped) {
+            case '"': case '\\': case '/':
+                if (capture) append(escaped);
+                break;
+            case 'b': if (capture) append('\b'); break;
+            case 'f': if (capture) append('\f'); break;
+            case 'n': if (capture) append('\n'); break;
+            case 'r': if (capture) append('\r'); break;
+            case 't': if (capture) append('\t'); break;
+            default:
+                throw error("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Decode a \\uXXXX escape after its u, pairing a high surrogate with the low surrogate escaped next.
+     * An unpaired surrogate becomes U+FFFD and whatever follows it is decoded as usual.
+     */
+    private void readUnicodeEscape(boolean capture) throws PayloadParseException {
+        int codePoint = readHex4();
+        while (Character.isHighSurrogate((char) codePoint)) {
+            int backslash = next();
+            if (backslash != '\\') {
+                unread(backslash);
+                codePoint = 0xFFFD;
+                break;
+            }
+            int escaped = next();
+            if (escaped != 'u') {
+                if (capture) appendCodePoint(0xFFFD);
+                readSimpleEscape(escaped, capture);
+                return;
+            }
+            int low = readHex4();
+            if (Character.isLowSurrogate((char) low)) {
+                if (capture) appendCodePoint(Character.toCodePoint((char) codePoint, (char) low));
+                return;
+            }
+            // The next escape may start a pair of its own
+            if (capture) appendCodePoint(0xFFFD);
+            codePoint = low;
+        }
+        if (capture) appendCodePoint(Character.isLowSurrogate((char) codePoint) ? 0xFFFD : codePoint);
+    }
+
+    private int readHex4() throws PayloadParseException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(next(), 16);
+            if (digit < 0) throw error("Invalid unicode escape");
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            append(codePoint);
+        } else if (codePoint < 0x800) {
+            append(0xC0 | (codePoint >> 6));
+            append(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            append(0xE0 | (codePoint >> 12));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        } else {
+            append(0xF0 | (codePoint >> 18));
+            append(0x80 | ((codePoint >> 12) & 0x3F));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void append(int b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = (byte) b;
+    }
+
+    // --- Byte cursor over the chunks ---
+
+    private int nextNonWhitespace() {
+        int b;
+        do {
+            b = next();
+        } while (isWhitespace(b));
+        return b;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * @return the next byte as 0-255, or -1 at the end of the payload
+     */
+    private int next() {
+        if (pushedBack != NO_BYTE) {
+            int b = pushedBack;
+            pushedBack = NO_BYTE;
+            return b;
+        }
+        while (chunkPosition == chunkLimit) {
+            if (chunkIndex + 1 >= chunks.length) return -1;
+            chunk = chunks[++chunkIndex];
+            chunkPosition = chunk.position();
+            chunkLimit = chunk.limit();
+        }
+        offset++;
+        return chunk.get(chunkPosition++) & 0xFF;
+    }
+
+    private void unread(int b) {
+        pushedBack = b;
+    }
+
+    private PayloadParseException error(String message) {
+        return new PayloadParseException(message + " at byte " + offset);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
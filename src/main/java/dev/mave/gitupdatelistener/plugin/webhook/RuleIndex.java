@@ -0,0 +1,175 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Trigger rules compiled for matching incoming pushes.
+ * <p>
+ * Rules with a literal ref are found with one hash lookup, rules with a glob are tried in order
+ * against their precompiled pattern. In globs {@code *} and {@code ?} stay within one path segment
+ * and {@code **} spans segments. A pattern that doesn't start with "refs/" is a branch name.
+ * <p>
+ * A rule's path globs are compiled into a {@link PathFilter} along with it, but are left for the
+ * caller to apply, since the changed paths aren't always known when a push is matched.
+ */
+public final class RuleIndex {
+    private static final String BRANCH_PREFIX = "refs/heads/";
+
+    private final List<TriggerRule> rules;
+    private final Map<String, List<CompiledRule>> exactRefs = new HashMap<>();
+    private final List<CompiledRule> globRefs = new ArrayList<>();
+    private final Map<TriggerRule, PathFilter> pathFilters = new IdentityHashMap<>();
+
+    public RuleIndex(@NotNull List<TriggerRule> rules) {
+        this.rules = rules;
+        for (int order = 0; order < rules.size(); order++) {
+            TriggerRule rule = rules.get(order);
+            if (rule.configName == null || rule.configName.isEmpty() || rule.refPattern == null || rule.refPattern.isEmpty()) {
+                continue;
+            }
+            String refPattern = rule.refPattern.startsWith("refs/") ? rule.refPattern : BRANCH_PREFIX + rule.refPattern;
+            if (isGlob(refPattern)) {
+                globRefs.add(new CompiledRule(rule, order, compileGlob(refPattern)));
+            } else {
+                exactRefs.computeIfAbsent(refPattern, k -> new ArrayList<>()).add(new CompiledRule(rule, order, null));
+            }
+            PathFilter pathFilter = PathFilter.compile(rule.includePaths, rule.excludePaths);
+            if (pathFilter != null) {
+                pathFilters.put(rule, pathFilter);
+            }
+        }
+    }
+
+    /**
+     * The rules this index was compiled from
+     */
+    @NotNull
+    public List<TriggerRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Whether any rule has path globs, so pushes need their changed paths parsed
+     */
+    public boolean hasPathFilters() {
+        return !pathFilters.isEmpty();
+    }
+
+    /**
+     * The compiled path globs of one of this index's rules
+     *
+     * @return the filter, or null if the rule has no path globs
+     */
+    @Nullable
+    public PathFilter getPathFilter(@NotNull TriggerRule rule) {
+        return pathFilters.get(rule);
+    }
+
+    /**
+     * Every rule matching a push, in the order the rules are configured
+     */
+    @NotNull
+    public List<TriggerRule> match(@Nullable String repositoryFullName, @Nullable String ref) {
+        if (ref == null) {
+            return Collections.emptyList();
+        }
+        List<CompiledRule> matches = null;
+        List<CompiledRule> exact = exactRefs.get(ref);
+        if (exact != null) {
+            for (CompiledRule candidate : exact) {
+                if (candidate.matchesRepository(repositoryFullName)) {
+                    if (matches == null) matches = new ArrayList<>();
+                    matches.add(candidate);
+                }
+            }
+        }
+        for (CompiledRule candidate : globRefs) {
+            if (candidate.matchesRepository(repositoryFullName) && candidate.refPattern.matcher(ref).matches()) {
+                if (matches == null) matches = new ArrayList<>();
+                matches.add(candidate);
+            }
+        }
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        if (exact != null && !globRefs.isEmpty()) {
+            matches.sort(Comparator.comparingInt(candidate -> candidate.order));
+        }
+        List<TriggerRule> matched = new ArrayList<>(matches.size());
+        for (CompiledRule candidate : matches) {
+            matched.add(candidate.rule);
+        }
+        return matched;
+    }
+
+    private static boolean isGlob(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+    }
+
+    /**
+     * Translate a glob into a regular expression, quoting everything else
+     */
+    static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                i++;
+                // "**/" also matches no directories at all
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                    i++;
+                    regex.append("(?:.*/)?");
+                } else {
+                    regex.append(".*");
+                }
+            } else {
+                regex.append("[^/]*");
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class CompiledRule {
+        final TriggerRule rule;
+        final int order;
+        final Pattern refPattern;
+        final String repository;
+
+        CompiledRule(TriggerRule rule, int order, @Nullable Pattern refPattern) {
+            this.rule = rule;
+            this.order = order;
+            this.refPattern = refPattern;
+            this.repository = rule.repository == null || rule.repository.isBlank() ? null : rule.repository.trim();
+        }
+
+        boolean matchesRepository(@Nullable String repositoryFullName) {
+            // GitHub repository names are case-insensitive
+            return repository == null || (repositoryFullName != null && repository.equalsIgnoreCase(repositoryFullName));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Checks the {@code X-Hub-Signature-256} header GitHub sends when the webhook has a secret:
+ * "sha256=" followed by the hex HMAC-SHA256 of the raw body.
+ * <p>
+ * The HMAC itself is computed by whoever reads the body, with the {@link Mac} from {@link #getMac()}.
+ * Macs are not thread-safe and costly to set up, so each thread keeps one for this secret and resets it per request.
+ */
+public final class WebhookSignature {
+    public static final String HEADER = "X-Hub-Signature-256";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String PREFIX = "sha256=";
+    private static final int MAC_LENGTH = 32;
+
+    private final String secret;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::createMac);
+
+    public WebhookSignature(@NotNull String secret) {
+        this.secret = secret;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    /**
+     * The secret this verifies against
+     */
+    @NotNull
+    public String getSecret() {
+        return secret;
+    }
+
+    /**
+     * This thread's Mac keyed with the secret, reset and ready for a new body
+     */
+    @NotNull
+    public Mac getMac() {
+        Mac mac = macs.get();
+        mac.reset();
+        return mac;
+    }
+
+    /**
+     * Whether a signature header carries the given body HMAC, compared in constant time
+     *
+     * @param header  the {@code X-Hub-Signature-256} value, or null if the request had none
+     * @param bodyMac the HMAC computed over the body, or null if none was computed
+     */
+    public static boolean matches(@Nullable String header, @Nullable byte[] bodyMac) {
+        if (header == null || bodyMac == null || header.length() != PREFIX.length() + 2 * MAC_LENGTH
+                || !header.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            return false;
+        }
+        byte[] expected = new byte[MAC_LENGTH];
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            int high = Character.digit(header.charAt(PREFIX.length() + 2 * i), 16);
+            int low = Character.digit(header.charAt(PREFIX.length() + 2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            expected[i] = (byte) (high << 4 | low);
+        }
+        return MessageDigest.isEqual(expected, bodyMac);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // Every JRE is required to provide HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package dev.mave.gitupdatelistener.plugin.discord;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.mave.gitupdatelistener.plugin.metrics.LatencyHistogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiscordNotifierTest {
+    /** Short enough to keep the tests fast, long enough to tell apart from no delay at all */
+    private static final long RETRY_DELAY_MS = 20;
+
+    private HttpServer server;
+    private DiscordNotifier notifier;
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    /** Every request the stub webhook received, in order */
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+    /** Answers the request with the given number, counting from 0 */
+    private volatile Function<Request, Response> responses = request -> new Response(204, null);
+
+    private record Request(int number, long receivedNanos, int embeds, String body) {
+    }
+
+    private record Response(int status, String retryAfter) {
+    }
+
+    @BeforeEach
+    void startWebhook() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/webhook", this::handle);
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/webhook";
+        notifier = new DiscordNotifier(() -> url, sendLatency, RETRY_DELAY_MS);
+    }
+
+    @AfterEach
+    void stopWebhook() {
+        notifier.close();
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Request request;
+        synchronized (requests) {
+            request = new Request(requests.size(), System.nanoTime(), countEmbeds(body), body);
+            requests.add(request);
+        }
+        Response response = responses.apply(request);
+        if (response.retryAfter() != null) {
+            exchange.getResponseHeaders().add("Retry-After", response.retryAfter());
+        }
+        exchange.sendResponseHeaders(response.status(), -1);
+        exchange.close();
+    }
+
+    private static int countEmbeds(String body) {
+        int count = 0;
+        for (int i = body.indexOf("{\"title\":"); i >= 0; i = body.indexOf("{\"title\":", i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static DiscordEmbed embed(String title) {
+        return embed(title, "Triggered by a push");
+    }
+
+    private static DiscordEmbed embed(String title, String description) {
+        return new DiscordEmbed(title, description, "Git Update Listener", Instant.EPOCH);
+    }
+
+    /**
+     * Wait until the stub webhook has received the given number of requests
+     */
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (requests.size() < count) {
+            assertTrue(System.nanoTime() < deadline, "Expected " + count + " requests, got " + requests.size());
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Wait a little longer to make sure no further request follows
+     */
+    private void assertNoMoreRequests(int count) throws InterruptedException {
+        Thread.sleep(RETRY_DELAY_MS * 10);
+        assertEquals(count, requests.size());
+    }
+
+    @Test
+    void retriesAfterTheDelayDiscordAdvertises() throws InterruptedException {
+        responses = request -> request.number() == 0 ? new Response(429, "0.3") : new Response(204, null);
+
+        notifier.enqueue(embed("Rate limited"));
+
+        awaitRequests(2);
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(requests.get(1).receivedNanos() - requests.get(0).receivedNanos());
+        assertTrue(waitedMs >= 300, "Retried after " + waitedMs + " ms");
+        assertEquals(requests.get(0).body(), requests.get(1).body());
+        assertNoMoreRequests(2);
+    }
+
+    /**
+     * Wait until the worker has recorded the given number of sent messages
+     */
+    private void awaitRecorded(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (sendLatency.snapshot().getCount() < count) {
+            assertTrue(System.nanoTime() < deadline, "Expected " + count + " recorded messages");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void recordsTheLatencyOfAcceptedMessagesOnly() throws InterruptedException {
+        responses = request -> request.body().contains("Rejected") ? new Response(400, null) : new Response(204, null);
+
+        notifier.enqueue(embed("Rejected"));
+        awaitRequests(1);
+        notifier.enqueue(embed("Accepted"));
+        awaitRequests(2);
+        awaitRecorded(1);
+
+        responses = request -> new Response(503, null);
+        notifier.enqueue(embed("Unavailable"));
+        awaitRequests(7);
+        assertNoMoreRequests(7);
+        assertEquals(1, sendLatency.snapshot().getCount());
+    }
+
+    @Test
+    void retriesServerErrorsThenGivesUp() throws InterruptedException {
+        responses = request -> new Response(503, null);
+
+        notifier.enqueue(embed("Unavailable"));
+
+        awaitRequests(5);
+        assertNoMoreRequests(5);
+        for (Request request : requests) {
+            assertEquals(requests.get(0).body(), request.body());
+        }
+
+        // The worker moves on to the next notification
+        responses = request -> new Response(204, null);
+        notifier.enqueue(embed("Available again"));
+        awaitRequests(6);
+        assertTrue(requests.get(5).body().contains("Available again"));
+    }
+
+    /**
+     * Send one embed and hold its request until the returned latch is released, so whatever is
+     * queued meanwhile is batched
+     */
+    private CountDownLatch holdFirstMessage(Function<Request, Response> then) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        responses = request -> {
+            if (request.number() == 0) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Response(204, null);
+            }
+            return then.apply(request);
+        };
+        notifier.enqueue(embed("First"));
+        awaitRequests(1);
+        return release;
+    }
+
+    private List<Integer> embedsPerMessage() {
+        synchronized (requests) {
+            return requests.stream().map(Request::embeds).toList();
+        }
+    }
+
+    @Test
+    void splitsMoreThanTenQueuedEmbedsIntoSeveralMessages() throws InterruptedException {
+        CountDownLatch release = holdFirstMessage(request -> new Response(204, null));
+
+        for (int i = 0; i < 25; i++) {
+            notifier.enqueue(embed("Build " + i));
+        }
+        release.countDown();
+
+        awaitRequests(4);
+        assertNoMoreRequests(4);
+        assertEquals(List.of(1, 10, 10, 5), embedsPerMessage());
+        // In the order they were queued
+        for (int i = 1, build = 0; i < requests.size(); i++) {
+            for (int j = 0; j < requests.get(i).embeds(); j++, build++) {
+                assertTrue(requests.get(i).body().contains("\"Build " + build + "\""), "Build " + build + " out of order");
+            }
+        }
+    }
+
+    @Test
+    void splitsMessagesByTheirTotalLength() throws InterruptedException {
+        CountDownLatch release = holdFirstMessage(request -> new Response(204, null));
+
+        // Two of these fit into a message, three don't
+        for (int i = 0; i < 5; i++) {
+            notifier.enqueue(embed("Long " + i, "x".repeat(2500)));
+        }
+        release.countDown();
+
+        awaitRequests(4);
+        assertNoMoreRequests(4);
+        assertEquals(List.of(1, 2, 2, 1), embedsPerMessage());
+    }
+
+    @Test
+    void sendsEmbedsOneByOneWhenDiscordRejectsTheirMessage() throws InterruptedException {
+        CountDownLatch release = holdFirstMessage(request ->
+                new Response(request.embeds() > 1 || request.body().contains("Rejected") ? 400 : 204, null));
+
+        notifier.enqueue(embed("Accepted 1"));
+        notifier.enqueue(embed("Rejected"));
+        notifier.enqueue(embed("Accepted 2"));
+        release.countDown();
+
+        awaitRequests(5);
+        assertNoMoreRequests(5);
+        assertEquals(List.of(1, 3, 1, 1, 1), embedsPerMessage());
+        assertTrue(requests.get(2).body().contains("Accepted 1"));
+        assertTrue(requests.get(3).body().contains("Rejected"));
+        assertTrue(requests.get(4).body().contains("Accepted 2"));
+    }
+
+    @Test
+    void keepsEachEmbedWithinTheMessageLimit() {
+        DiscordEmbed embed = new DiscordEmbed("t".repeat(300), "d".repeat(5000), "f".repeat(3000), Instant.EPOCH);
+        assertTrue(embed.length() <= DiscordEmbed.MAX_TOTAL_LENGTH, embed.length() + " characters");
+    }
+}
@@ -0,0 +1,183 @@
+package dev.mave.gitupdatelistener.plugin.git;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs against real repositories: a bare one standing in for the remote, a clone to push from and a
+ * clone to sync.
+ */
+class GitSyncTest {
+    /** Runs the git on the path, without any user or system configuration that could get in the way */
+    private static final GitSync.CommandRunner GIT = (workTree, args) -> {
+        List<String> command = new ArrayList<>(List.of("git", "-C", workTree.toString(),
+                "-c", "user.name=Mave", "-c", "user.email=mave@example.com", "-c", "commit.gpgsign=false"));
+        command.addAll(args);
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().put("GIT_CONFIG_NOSYSTEM", "1");
+        builder.environment().put("GIT_CONFIG_GLOBAL", "/dev/null");
+        Process process = builder.start();
+        try (InputStream stdout = process.getInputStream(); InputStream stderr = process.getErrorStream()) {
+            String output = new String(stdout.readAllBytes(), StandardCharsets.UTF_8);
+            String errors = new String(stderr.readAllBytes(), StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                throw new IOException("git " + String.join(" ", args) + " failed: " + errors);
+            }
+            return output;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    };
+
+    @TempDir
+    Path directory;
+
+    private Path origin;
+    private Path upstream;
+    private Path work;
+    private final List<List<String>> commands = new ArrayList<>();
+    /** Records every command before running it */
+    private final GitSync.CommandRunner recordingGit = (workTree, args) -> {
+        commands.add(args);
+        return GIT.run(workTree, args);
+    };
+
+    @BeforeEach
+    void createRepositories() throws IOException {
+        origin = directory.resolve("origin.git");
+        upstream = directory.resolve("upstream");
+        work = directory.resolve("work");
+        Files.createDirectories(origin);
+        GIT.run(origin, List.of("init", "--quiet", "--bare", "--initial-branch=main"));
+        GIT.run(directory, List.of("clone", "--quiet", origin.toString(), upstream.toString()));
+        commit("first");
+        GIT.run(upstream, List.of("push", "--quiet", "origin", "HEAD:main"));
+        GIT.run(directory, List.of("clone", "--quiet", origin.toString(), work.toString()));
+    }
+
+    /**
+     * Commit a change in the upstream clone
+     *
+     * @return the commit's ID
+     */
+    private String commit(String message) throws IOException {
+        Files.writeString(upstream.resolve("file.txt"), message + "\n");
+        GIT.run(upstream, List.of("add", "file.txt"));
+        GIT.run(upstream, List.of("commit", "--quiet", "-m", message));
+        return GIT.run(upstream, List.of("rev-parse", "HEAD")).trim();
+    }
+
+    private String push(String message) throws IOException {
+        String head = commit(message);
+        GIT.run(upstream, List.of("push", "--quiet", "origin", "HEAD:main"));
+        return head;
+    }
+
+    private String workHead() throws IOException {
+        return GIT.run(work, List.of("rev-parse", "HEAD")).trim();
+    }
+
+    @Test
+    void fastForwardsToThePushedCommit() throws IOException {
+        String pushed = push("second");
+
+        assertEquals(GitSync.Result.FAST_FORWARDED, new GitSync().sync(work, "main", pushed, recordingGit));
+        assertEquals(pushed, workHead());
+        // Only the branch's upstream ref is fetched
+        assertTrue(commands.contains(List.of("fetch", "--quiet", "--no-tags", "origin", "refs/heads/main")));
+    }
+
+    @Test
+    void leavesAnUpToDateBranchAloneWithoutRunningGit() throws IOException {
+        GitSync sync = new GitSync();
+        String pushed = push("second");
+        sync.sync(work, "main", pushed, GIT);
+
+        assertEquals(GitSync.Result.UP_TO_DATE, sync.sync(work, "main", pushed.toUpperCase(), recordingGit));
+        assertEquals(List.of(), commands);
+    }
+
+    @Test
+    void readsPackedRefs() throws IOException {
+        String head = workHead();
+        GIT.run(work, List.of("pack-refs", "--all"));
+        assertFalse(Files.exists(work.resolve(".git/refs/heads/main")));
+
+        GitDirectory gitDirectory = GitDirectory.open(work);
+        assertEquals(head, gitDirectory.readRef("refs/heads/main"));
+        assertEquals(head, gitDirectory.readRef("refs/remotes/origin/main"));
+        // A ref that is a suffix of a packed one isn't mistaken for it
+        assertNull(gitDirectory.readRef("heads/main"));
+        assertNull(gitDirectory.readRef("refs/heads/other"));
+
+        assertEquals(GitSync.Result.UP_TO_DATE, new GitSync().sync(work, "main", head, recordingGit));
+        assertEquals(List.of(), commands);
+    }
+
+    @Test
+    void skipsADetachedHead() throws IOException {
+        GIT.run(work, List.of("checkout", "--quiet", "--detach"));
+        String head = workHead();
+
+        assertNull(GitDirectory.open(work).getHeadRef());
+        GitSync sync = new GitSync();
+        assertNull(sync.getCurrentBranch(work, GIT));
+        assertEquals(GitSync.Result.OTHER_BRANCH, sync.sync(work, "main", push("second"), GIT));
+        assertEquals(head, workHead());
+    }
+
+    @Test
+    void skipsAnotherCheckedOutBranchAndNoticesASwitchBack() throws IOException {
+        GitSync sync = new GitSync();
+        GIT.run(work, List.of("checkout", "--quiet", "-b", "feature"));
+        String pushed = push("second");
+        assertEquals("feature", sync.getCurrentBranch(work, GIT));
+        assertEquals(GitSync.Result.OTHER_BRANCH, sync.sync(work, "main", pushed, GIT));
+
+        GIT.run(work, List.of("checkout", "--quiet", "main"));
+        assertEquals(GitSync.Result.FAST_FORWARDED, sync.sync(work, "main", pushed, GIT));
+        assertEquals(pushed, workHead());
+    }
+
+    @Test
+    void followsTheConfiguredUpstream() throws IOException {
+        GIT.run(work, List.of("remote", "rename", "origin", "github"));
+        GIT.run(work, List.of("checkout", "--quiet", "-b", "deploy", "--track", "github/main"));
+
+        GitDirectory.Upstream tracked = GitDirectory.open(work).getUpstream("deploy");
+        assertEquals("github", tracked.remote);
+        assertEquals("refs/heads/main", tracked.mergeRef);
+
+        String pushed = push("second");
+        assertEquals(GitSync.Result.FAST_FORWARDED, new GitSync().sync(work, "deploy", pushed, GIT));
+        assertEquals(pushed, workHead());
+    }
+
+    @Test
+    void linkedWorktreeHasItsOwnHeadAndSharedRefs() throws IOException {
+        Path linked = directory.resolve("linked");
+        GIT.run(work, List.of("worktree", "add", "--quiet", "-b", "hotfix", linked.toString()));
+        String pushed = push("second");
+
+        GitSync sync = new GitSync();
+        assertEquals("hotfix", sync.getCurrentBranch(linked, GIT));
+        assertEquals("main", sync.getCurrentBranch(work, GIT));
+        assertEquals(GitSync.Result.OTHER_BRANCH, sync.sync(linked, "main", pushed, GIT));
+        assertEquals(workHead(), GitDirectory.open(linked).readRef("refs/heads/hotfix"));
+    }
+}
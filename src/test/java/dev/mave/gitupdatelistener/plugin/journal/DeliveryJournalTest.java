@@ -0,0 +1,234 @@
+package dev.mave.gitupdatelistener.plugin.journal;
+
+import dev.mave.gitupdatelistener.plugin.pipeline.TriggerKey;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryJournalTest {
+    private static final TriggerKey BUILD = new TriggerKey("project", "Build");
+    private static final TriggerKey DEPLOY = new TriggerKey("project", "Deploy");
+    private static final TriggerKey ANY_PROJECT = new TriggerKey(null, "Serve");
+
+    @TempDir
+    Path directory;
+
+    private DeliveryJournal journal;
+
+    @AfterEach
+    void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private DeliveryJournal open() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        journal = DeliveryJournal.open(directory, DeliveryJournal.DEFAULT_DEDUP_CAPACITY);
+        return journal;
+    }
+
+    private static PushEvent push(String headCommitId) {
+        return new PushEvent("refs/heads/main", "mave/app", headCommitId, "Commit " + headCommitId, "Mave", null);
+    }
+
+    /**
+     * The delivery IDs of the entries waiting for the project, which are taken in the process
+     */
+    private Set<String> replayable() {
+        return journal.takeReplayable("project").stream()
+                .map(JournalEntry::getDeliveryId)
+                .collect(Collectors.toSet());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted(Comparator.comparing(Path::toString)).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * The segment the last session wrote to, which is the last one that holds any records
+     */
+    private Path lastWrittenSegment() throws IOException {
+        Path last = null;
+        for (Path segment : segments()) {
+            if (Files.size(segment) > 8) {
+                last = segment;
+            }
+        }
+        assertTrue(last != null, "No segment holds any records");
+        return last;
+    }
+
+    @Test
+    void pendingEntriesSurviveAReopen() throws IOException {
+        open().append("delivery-1", BUILD, push("a1"));
+        journal.append("delivery-2", DEPLOY, push("a1"));
+        journal.append("delivery-3", ANY_PROJECT, push("a1"));
+        journal.sync();
+
+        open();
+        assertEquals(Set.of("delivery-1", "delivery-2", "delivery-3"), replayable());
+        assertEquals(3, journal.getLastSequence());
+        // Redeliveries are still recognized
+        assertFalse(journal.tryReserve("delivery-1"));
+        // Taken entries aren't handed out twice
+        assertEquals(Set.of(), replayable());
+    }
+
+    @Test
+    void replaysOnlyTheNewestEntryPerConfiguration() throws IOException {
+        open().append("delivery-1", BUILD, push("a1"));
+        journal.append("delivery-2", BUILD, push("a2"));
+        journal.sync();
+
+        open();
+        assertEquals(Set.of("delivery-2"), replayable());
+    }
+
+    @Test
+    void completeSettlesCoalescedEntriesAndRedeliveriesOfTheSameCommit() throws IOException {
+        open();
+        journal.append("delivery-1", BUILD, push("a1"));
+        long second = journal.append("delivery-2", BUILD, push("a2"));
+        journal.append("delivery-3", BUILD, push("a2"));
+        journal.append("delivery-4", BUILD, push("a3"));
+        journal.append("delivery-5", DEPLOY, push("a2"));
+        journal.sync();
+
+        // The run for delivery-2 covered delivery-1, which was coalesced into it, and delivery-3, a
+        // later push of the same commit, but neither the next commit nor another configuration
+        journal.complete(BUILD, second, "a2");
+        journal.awaitProject(BUILD, Long.MAX_VALUE);
+        journal.awaitProject(DEPLOY, Long.MAX_VALUE);
+        assertEquals(Set.of("delivery-4", "delivery-5"), replayable());
+
+        open();
+        assertEquals(Set.of("delivery-4", "delivery-5"), replayable());
+    }
+
+    @Test
+    void awaitProjectOnlyHoldsEntriesUpToTheSequence() throws IOException {
+        open();
+        long first = journal.append("delivery-1", BUILD, push("a1"));
+        journal.append("delivery-2", DEPLOY, push("a1"));
+        journal.append("delivery-3", BUILD, push("a2"));
+
+        journal.awaitProject(BUILD, first);
+        assertEquals(Set.of("delivery-1"), replayable());
+        assertEquals(List.of(), journal.takeReplayable("other"));
+    }
+
+    @Test
+    void entriesWithoutAProjectReplayInAnyProject() throws IOException {
+        open();
+        long sequence = journal.append("delivery-1", ANY_PROJECT, push("a1"));
+        journal.append("delivery-2", BUILD, push("a1"));
+        journal.awaitProject(ANY_PROJECT, sequence);
+        journal.awaitProject(BUILD, Long.MAX_VALUE);
+
+        List<JournalEntry> replayed = journal.takeReplayable("other");
+        assertEquals(1, replayed.size());
+        assertEquals("delivery-1", replayed.get(0).getDeliveryId());
+        assertEquals(Set.of("delivery-2"), replayable());
+    }
+
+    @Test
+    void dropsATornLastRecordOnReopen() throws IOException {
+        open().append("delivery-1", BUILD, push("a1"));
+        journal.append("delivery-2", DEPLOY, push("a1"));
+        journal.sync();
+        journal.close();
+
+        // A crash in the middle of writing the last record
+        Path segment = lastWrittenSegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        open();
+        assertEquals(Set.of("delivery-1"), replayable());
+        assertTrue(journal.tryReserve("delivery-2"));
+    }
+
+    @Test
+    void dropsACorruptLastRecordOnReopen() throws IOException {
+        open().append("delivery-1", BUILD, push("a1"));
+        journal.append("delivery-2", DEPLOY, push("a1"));
+        journal.sync();
+        journal.close();
+
+        Path segment = lastWrittenSegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(segment, bytes);
+
+        open();
+        assertEquals(Set.of("delivery-1"), replayable());
+        // Appending after the corrupt record still works, in a segment of its own
+        journal.append("delivery-3", DEPLOY, push("a2"));
+        journal.sync();
+        open();
+        assertEquals(Set.of("delivery-1", "delivery-3"), replayable());
+    }
+
+    @Test
+    void compactKeepsPendingEntriesAndRemembersCompletedDeliveries() throws IOException {
+        open();
+        long first = journal.append("delivery-1", BUILD, push("a1"));
+        journal.append("delivery-2", DEPLOY, push("a1"));
+        journal.append("delivery-3", ANY_PROJECT, push("a1"));
+        journal.complete(BUILD, first, "a1");
+        journal.sync();
+        open();
+        journal.append("delivery-4", BUILD, push("a2"));
+        journal.sync();
+        assertTrue(segments().size() > 1);
+
+        journal.compact();
+        assertEquals(1, segments().size());
+
+        open();
+        assertEquals(Set.of("delivery-2", "delivery-3", "delivery-4"), replayable());
+        assertFalse(journal.tryReserve("delivery-1"));
+        assertEquals(4, journal.getLastSequence());
+    }
+
+    @Test
+    void tryReserveClaimsADeliveryOnce() throws IOException {
+        open();
+        assertTrue(journal.tryReserve("delivery-1"));
+        assertFalse(journal.tryReserve("delivery-1"));
+
+        // Nothing was journaled, so a redelivery is handled again
+        journal.release("delivery-1");
+        assertTrue(journal.tryReserve("delivery-1"));
+
+        journal.append("delivery-1", BUILD, push("a1"));
+        journal.release("delivery-1");
+        assertFalse(journal.tryReserve("delivery-1"));
+
+        // Deliveries without an ID can't be told apart
+        assertTrue(journal.tryReserve(""));
+        assertTrue(journal.tryReserve(""));
+    }
+}
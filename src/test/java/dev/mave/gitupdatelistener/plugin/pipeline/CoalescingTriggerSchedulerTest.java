@@ -0,0 +1,192 @@
+package dev.mave.gitupdatelistener.plugin.pipeline;
+
+import dev.mave.gitupdatelistener.plugin.webhook.PathFilter;
+import dev.mave.gitupdatelistener.plugin.webhook.PushEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingTriggerSchedulerTest {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    /** Every run the scheduler started, in order */
+    private final List<TriggerRun> started = Collections.synchronizedList(new ArrayList<>());
+    /** The completion of each started run, completed by the test */
+    private final List<CompletableFuture<Void>> completions = Collections.synchronizedList(new ArrayList<>());
+    private volatile int quietWindowMs = 0;
+
+    private final CoalescingTriggerScheduler scheduler = new CoalescingTriggerScheduler(executor, () -> quietWindowMs, run -> {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        synchronized (started) {
+            started.add(run);
+            completions.add(completion);
+        }
+        return completion;
+    });
+
+    @AfterEach
+    void shutDown() {
+        scheduler.cancelAll();
+        executor.shutdownNow();
+    }
+
+    private static TriggerRun run(String configName, String commitId) {
+        return new TriggerRun(new PushEvent("refs/heads/main", "mave/app", commitId, "Commit " + commitId, "Mave", null),
+                "project", configName);
+    }
+
+    /**
+     * A run for a push from one commit to the next, checked against a path filter once pulled
+     */
+    private static TriggerRun filteredRun(String before, String after, boolean pullOnly) {
+        PushEvent event = new PushEvent("refs/heads/main", "mave/app", after, "Commit " + after, "Mave", Set.of("src/App.java"),
+                1, before, after, false);
+        return new TriggerRun(event, "project", "Build", -1, pullOnly, PathFilter.compile("src/", null));
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (started.size() < count) {
+            assertTrue(System.nanoTime() < deadline, "Expected " + count + " runs, got " + started.size());
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Wait long enough for the scheduler's timers to have fired, then check nothing else started
+     */
+    private void assertNoMoreStarted(int count) throws InterruptedException {
+        Thread.sleep(quietWindowMs + 100);
+        assertEquals(count, started.size());
+    }
+
+    private List<String> startedCommits() {
+        synchronized (started) {
+            return started.stream().map(run -> run.getEvent().getHeadCommitId()).toList();
+        }
+    }
+
+    @Test
+    void queuesAtMostOneRunPerKeyWhileItsRunIsInProgress() throws InterruptedException {
+        scheduler.submit(run("Build", "c0"));
+        awaitStarted(1);
+
+        // However many pushes arrive meanwhile, only the newest is kept
+        for (int i = 1; i <= 1000; i++) {
+            scheduler.submit(run("Build", "c" + i));
+        }
+        assertTrue(started.get(0).isCancelled());
+        completions.get(0).complete(null);
+
+        awaitStarted(2);
+        completions.get(1).complete(null);
+        assertNoMoreStarted(2);
+        assertEquals(List.of("c0", "c1000"), startedCommits());
+    }
+
+    @Test
+    void queueIsBoundedByTheNumberOfKeys() throws InterruptedException {
+        quietWindowMs = 50;
+        for (int i = 0; i < 100; i++) {
+            for (int key = 0; key < 10; key++) {
+                scheduler.submit(run("Config " + key, "c" + i));
+            }
+        }
+
+        awaitStarted(10);
+        assertNoMoreStarted(10);
+        Set<TriggerKey> keys = new HashSet<>();
+        for (TriggerRun run : started) {
+            keys.add(run.getKey());
+            assertEquals("c99", run.getEvent().getHeadCommitId());
+        }
+        assertEquals(10, keys.size());
+    }
+
+    @Test
+    void quietWindowRestartsOnEveryPush() throws InterruptedException {
+        quietWindowMs = 500;
+        scheduler.submit(run("Build", "c1"));
+        Thread.sleep(300);
+        scheduler.submit(run("Build", "c2"));
+        Thread.sleep(300);
+        // The first push is older than the window, but the second one restarted it
+        assertEquals(0, started.size());
+
+        awaitStarted(1);
+        assertNoMoreStarted(1);
+        assertEquals(List.of("c2"), startedCommits());
+    }
+
+    @Test
+    void dropsRedeliveriesOfAPendingOrRunningCommit() throws InterruptedException {
+        quietWindowMs = 50;
+        scheduler.submit(run("Build", "c1"));
+        scheduler.submit(run("Build", "c1"));
+        awaitStarted(1);
+
+        scheduler.submit(run("Build", "c1"));
+        assertFalse(started.get(0).isCancelled());
+        completions.get(0).complete(null);
+        assertNoMoreStarted(1);
+    }
+
+    @Test
+    void pullOnlyPushNeitherReplacesNorCancelsARestart() throws InterruptedException {
+        quietWindowMs = 50;
+        scheduler.submit(filteredRun("c0", "c1", false));
+        scheduler.submit(filteredRun("c1", "c2", true));
+        awaitStarted(1);
+        assertNoMoreStarted(1);
+        assertEquals(List.of("c1"), startedCommits());
+
+        scheduler.submit(filteredRun("c1", "c2", true));
+        assertFalse(started.get(0).isCancelled());
+        completions.get(0).complete(null);
+
+        // The pull still happens once the restart is done
+        awaitStarted(2);
+        assertTrue(started.get(1).isPullOnly());
+    }
+
+    @Test
+    void supersedingRunDiffsFromTheOldestCoveredCommit() throws InterruptedException {
+        quietWindowMs = 50;
+        scheduler.submit(filteredRun("c0", "c1", false));
+        scheduler.submit(filteredRun("c1", "c2", false));
+        awaitStarted(1);
+        assertEquals("c0", started.get(0).getDiffBase());
+
+        // A running run that is cancelled hands its base on as well
+        scheduler.submit(filteredRun("c2", "c3", false));
+        assertTrue(started.get(0).isCancelled());
+        completions.get(0).complete(null);
+        awaitStarted(2);
+        assertEquals("c3", started.get(1).getEvent().getHeadCommitId());
+        assertEquals("c0", started.get(1).getDiffBase());
+    }
+
+    @Test
+    void supersedingAnUnfilteredRunRestartsRegardless() throws InterruptedException {
+        quietWindowMs = 50;
+        scheduler.submit(run("Build", "c1"));
+        scheduler.submit(filteredRun("c1", "c2", false));
+        awaitStarted(1);
+
+        assertEquals("c2", started.get(0).getEvent().getHeadCommitId());
+        assertNull(started.get(0).getPathFilter());
+    }
+}
@@ -0,0 +1,163 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpRequestParserTest {
+    private static final int MAX_HEADER_SIZE = 1024;
+    private static final int MAX_BODY_SIZE = 100;
+
+    /** Small chunks, so bodies span several of them */
+    private final BufferPool pool = new BufferPool(16, false, 4);
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private HttpRequestParser parser(String raw) {
+        return new HttpRequestParser(new ByteArrayInputStream(raw.getBytes(StandardCharsets.ISO_8859_1)), output, pool,
+                MAX_HEADER_SIZE, MAX_BODY_SIZE);
+    }
+
+    private static String body(HttpRequest request) {
+        StringBuilder body = new StringBuilder();
+        for (ByteBuffer chunk : request.getBody().chunks()) {
+            ByteBuffer copy = chunk.duplicate();
+            byte[] bytes = new byte[copy.remaining()];
+            copy.get(bytes);
+            body.append(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return body.toString();
+    }
+
+    private int refusedWith(String raw) {
+        return assertThrows(HttpParseException.class, () -> parser(raw).readRequest()).getStatusCode();
+    }
+
+    @Test
+    void readsABodyByContentLength() throws IOException {
+        HttpRequest request = parser("POST /hook?x=1 HTTP/1.1\r\nHost: localhost\r\nContent-Length: 39\r\n"
+                + "X-GitHub-Event: push\r\n\r\n" + "{\"ref\":\"refs/heads/main\",\"after\":\"abc\"}X").readRequest();
+
+        assertEquals("POST", request.getMethod());
+        assertEquals("/hook", request.getPath());
+        assertEquals("push", request.getHeader("x-github-event"));
+        assertEquals("push", request.getHeader("X-GITHUB-EVENT"));
+        assertEquals(39, request.getBody().size());
+        assertEquals("{\"ref\":\"refs/heads/main\",\"after\":\"abc\"}", body(request));
+        request.close();
+    }
+
+    @Test
+    void readsKeepAliveRequestsOneAfterAnother() throws IOException {
+        HttpRequestParser parser = parser("POST / HTTP/1.1\r\nContent-Length: 5\r\n\r\nfirst"
+                + "\r\nPOST / HTTP/1.1\nContent-Length: 6\nConnection: close\n\nsecond");
+
+        HttpRequest first = parser.readRequest();
+        assertEquals("first", body(first));
+        assertTrue(first.isKeepAlive());
+        first.close();
+
+        // The stray line break between requests is skipped, bare LFs end lines too
+        HttpRequest second = parser.readRequest();
+        assertEquals("second", body(second));
+        assertFalse(second.isKeepAlive());
+        second.close();
+
+        assertNull(parser.readRequest());
+    }
+
+    @Test
+    void keepsHttp10ConnectionsOpenOnlyWhenAsked() throws IOException {
+        assertFalse(parser("GET / HTTP/1.0\r\n\r\n").readRequest().isKeepAlive());
+        assertTrue(parser("GET / HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n").readRequest().isKeepAlive());
+    }
+
+    @Test
+    void decodesChunkedBodiesAndDiscardsTrailers() throws IOException {
+        HttpRequest request = parser("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nX-Hub-Signature-256: sha256=real\r\n\r\n"
+                + "5;name=value\r\nhello\r\n"
+                + "19\r\n, this spans a few chunks\r\n"
+                + "0\r\nX-Hub-Signature-256: sha256=forged\r\nX-Other: trailer\r\n\r\n"
+                + "GET /next HTTP/1.1\r\n\r\n").readRequest();
+
+        assertEquals("hello, this spans a few chunks", body(request));
+        assertEquals("sha256=real", request.getHeader("X-Hub-Signature-256"));
+        assertNull(request.getHeader("X-Other"));
+        assertNull(request.getHeader("Transfer-Encoding"));
+        assertEquals("30", request.getHeader("Content-Length"));
+        request.close();
+    }
+
+    @Test
+    void readsTheRequestAfterAChunkedOne() throws IOException {
+        HttpRequestParser parser = parser("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n"
+                + "POST /next HTTP/1.1\r\nContent-Length: 2\r\n\r\nok");
+        parser.readRequest().close();
+        HttpRequest next = parser.readRequest();
+        assertEquals("/next", next.getPath());
+        assertEquals("ok", body(next));
+    }
+
+    @Test
+    void sendsContinueBeforeReadingTheBody() throws IOException {
+        HttpRequest request = parser("POST / HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 4\r\n\r\nbody").readRequest();
+        assertEquals("body", body(request));
+        assertEquals("HTTP/1.1 100 Continue\r\n\r\n", output.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void refusesAnOversizedBodyWithoutSendingContinue() {
+        assertEquals(413, refusedWith("POST / HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: " + (MAX_BODY_SIZE + 1)
+                + "\r\n\r\n"));
+        assertEquals(0, output.size());
+    }
+
+    @Test
+    void refusesChunkedBodiesOverTheLimit() {
+        String chunk = "x".repeat(60);
+        assertEquals(413, refusedWith("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "3c\r\n" + chunk + "\r\n3c\r\n" + chunk + "\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    void refusesHeadersOverTheLimit() {
+        StringBuilder raw = new StringBuilder("POST / HTTP/1.1\r\n");
+        for (int i = 0; raw.length() <= MAX_HEADER_SIZE; i++) {
+            raw.append("X-Header-").append(i).append(": value\r\n");
+        }
+        assertEquals(431, refusedWith(raw + "\r\n"));
+        // A single line longer than the limit is refused before the whole of it is buffered
+        assertEquals(431, refusedWith("POST / HTTP/1.1\r\nX-Long: " + "x".repeat(20 * 1024) + "\r\n\r\n"));
+    }
+
+    @Test
+    void refusesTrailersOverTheLimit() {
+        assertEquals(431, refusedWith("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n0\r\nX-Trailer: "
+                + "x".repeat(MAX_HEADER_SIZE) + "\r\n\r\n"));
+    }
+
+    @Test
+    void refusesTransferCodingsOtherThanPlainChunked() {
+        assertEquals(501, refusedWith("POST / HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n"));
+        assertEquals(501, refusedWith("POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n"));
+    }
+
+    @Test
+    void refusesMalformedRequests() {
+        assertEquals(400, refusedWith("POST /\r\n\r\n"));
+        assertEquals(400, refusedWith("POST / SPDY/3\r\n\r\n"));
+        assertEquals(400, refusedWith("POST / HTTP/1.1\r\nNo colon here\r\n\r\n"));
+        assertEquals(400, refusedWith("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n"));
+        assertEquals(400, refusedWith("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n"));
+        assertEquals(400, refusedWith("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabcd\r\n0\r\n\r\n"));
+    }
+}
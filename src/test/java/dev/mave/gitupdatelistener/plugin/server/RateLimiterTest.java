@@ -0,0 +1,78 @@
+package dev.mave.gitupdatelistener.plugin.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static InetAddress address(int n) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{10, (byte) (n >> 16), (byte) (n >> 8), (byte) n});
+    }
+
+    @Test
+    void allowsABurstUpToTheLimitThenTellsHowLongToWait() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(60);
+        InetAddress client = address(1);
+        for (int i = 0; i < 60; i++) {
+            assertEquals(0, limiter.acquire(client, 0));
+        }
+        // One request a second refills
+        assertEquals(1, limiter.acquire(client, 0));
+        assertEquals(1, limiter.acquire(client, SECOND / 2));
+    }
+
+    @Test
+    void refillsEvenlyOverTheMinute() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(6);
+        InetAddress client = address(1);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(0, limiter.acquire(client, 0));
+        }
+        assertEquals(10, limiter.acquire(client, 0));
+        assertEquals(4, limiter.acquire(client, 6 * SECOND));
+        assertEquals(0, limiter.acquire(client, 10 * SECOND));
+        assertEquals(10, limiter.acquire(client, 10 * SECOND));
+    }
+
+    @Test
+    void limitsEachAddressOnItsOwn() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(1);
+        assertEquals(0, limiter.acquire(address(1), 0));
+        assertTrue(limiter.acquire(address(1), 0) > 0);
+        assertEquals(0, limiter.acquire(address(2), 0));
+    }
+
+    @Test
+    void noLimitWithZero() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.acquire(address(1), 0));
+        }
+    }
+
+    @Test
+    void forgetsTheLeastRecentlySeenAddressesWhenTheTableIsFull() throws UnknownHostException {
+        RateLimiter limiter = new RateLimiter(1);
+        InetAddress busy = address(0);
+        assertEquals(0, limiter.acquire(busy, 0));
+        for (int i = 1; i < RateLimiter.MAX_TRACKED_ADDRESSES - 1; i++) {
+            assertEquals(0, limiter.acquire(address(i), i));
+        }
+        // The busy address was seen again last, and has to keep waiting however many others arrive
+        assertTrue(limiter.acquire(busy, RateLimiter.MAX_TRACKED_ADDRESSES) > 0);
+        for (int i = 0; i < RateLimiter.MAX_TRACKED_ADDRESSES; i++) {
+            limiter.acquire(address(RateLimiter.MAX_TRACKED_ADDRESSES + i), RateLimiter.MAX_TRACKED_ADDRESSES + 1 + i);
+            assertTrue(limiter.getTrackedAddresses() <= RateLimiter.MAX_TRACKED_ADDRESSES);
+            if (i % 100 == 0) {
+                assertTrue(limiter.acquire(busy, RateLimiter.MAX_TRACKED_ADDRESSES + 1 + i) > 0, "Busy address refilled after " + i);
+            }
+        }
+    }
+}
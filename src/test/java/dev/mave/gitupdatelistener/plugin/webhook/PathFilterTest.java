@@ -0,0 +1,74 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PathFilterTest {
+    private static boolean includes(String includeGlobs, String... paths) {
+        return PathFilter.compile(includeGlobs, null).matchesAny(List.of(paths));
+    }
+
+    @Test
+    void noGlobsMeansNoFilter() {
+        assertNull(PathFilter.compile(null, null));
+        assertNull(PathFilter.compile(" ", ""));
+        assertNull(PathFilter.compile(" , ,", null));
+    }
+
+    @Test
+    void globWithoutSlashMatchesFileNamesInAnyDirectory() {
+        assertTrue(includes("*.md", "README.md"));
+        assertTrue(includes("*.md", "docs/setup/install.md"));
+        assertFalse(includes("*.md", "docs.md/setup.txt"));
+        assertTrue(includes("build.gradle.kts", "modules/app/build.gradle.kts"));
+    }
+
+    @Test
+    void globWithSlashIsRelativeToTheRoot() {
+        assertTrue(includes("src/*.java", "src/Main.java"));
+        assertFalse(includes("src/*.java", "src/app/Main.java"));
+        assertFalse(includes("src/*.java", "module/src/Main.java"));
+        assertTrue(includes("src/**/*.java", "src/Main.java"));
+        assertTrue(includes("src/**/*.java", "src/app/util/Strings.java"));
+    }
+
+    @Test
+    void leadingSlashAnchorsAtTheRoot() {
+        assertTrue(includes("/Makefile", "Makefile"));
+        assertFalse(includes("/Makefile", "tools/Makefile"));
+    }
+
+    @Test
+    void trailingSlashCoversEverythingBelowTheDirectory() {
+        assertTrue(includes("src/", "src/main/java/App.java"));
+        assertFalse(includes("src/", "test/src.txt"));
+        assertFalse(includes("src/", "srcs/App.java"));
+    }
+
+    @Test
+    void anyOfCommaSeparatedGlobsMatches() {
+        assertTrue(includes("src/, *.gradle.kts", "settings.gradle.kts"));
+        assertTrue(includes("src/, *.gradle.kts", "src/App.java"));
+        assertFalse(includes("src/, *.gradle.kts", "docs/index.html"));
+    }
+
+    @Test
+    void excludedPathsDontCountEvenWhenIncluded() {
+        PathFilter filter = PathFilter.compile("src/", "*.md");
+        assertFalse(filter.matchesAny(List.of("src/README.md")));
+        assertTrue(filter.matchesAny(List.of("src/README.md", "src/App.java")));
+        assertFalse(filter.matchesAny(List.of()));
+    }
+
+    @Test
+    void onlyExcludesLetEverythingElseThrough() {
+        PathFilter filter = PathFilter.compile("", "docs/, *.md");
+        assertFalse(filter.matchesAny(List.of("docs/index.html", "CHANGELOG.md")));
+        assertTrue(filter.matchesAny(List.of("CHANGELOG.md", "build.gradle.kts")));
+    }
+}
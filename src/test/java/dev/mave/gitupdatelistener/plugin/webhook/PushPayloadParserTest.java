@@ -0,0 +1,131 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PushPayloadParserTest {
+    private static final Set<PushField> ALL_FIELDS = EnumSet.allOf(PushField.class);
+
+    private static final String PUSH = "{\n"
+            + "  \"ref\": \"refs/heads/main\",\n"
+            + "  \"before\": \"1111111111111111111111111111111111111111\",\n"
+            + "  \"after\": \"2222222222222222222222222222222222222222\",\n"
+            + "  \"repository\": {\"id\": 1, \"name\": \"app\", \"full_name\": \"mave/app\", \"private\": false,\n"
+            + "    \"owner\": {\"name\": \"mave\", \"tags\": [1, 2.5e3, true, null, {\"nested\": [\"]\"]}]}},\n"
+            + "  \"forced\": false,\n"
+            + "  \"commits\": [\n"
+            + "    {\"id\": \"a\", \"added\": [\"src/New.java\"], \"removed\": [], \"modified\": [\"README.md\"]},\n"
+            + "    {\"id\": \"b\", \"added\": [], \"removed\": [\"src/Old.java\"], \"modified\": [\"README.md\"]}\n"
+            + "  ],\n"
+            + "  \"head_commit\": {\"id\": \"2222222222222222222222222222222222222222\", \"message\": \"Fix the build\",\n"
+            + "    \"author\": {\"name\": \"Mave\", \"email\": \"mave@example.com\"}}\n"
+            + "}";
+
+    private static PushEvent parse(String json, Set<PushField> fields) throws PayloadParseException {
+        return new PushPayloadParser().parse(json.getBytes(StandardCharsets.UTF_8), fields);
+    }
+
+    private static String message(String escaped) throws PayloadParseException {
+        return parse("{\"head_commit\":{\"message\":\"" + escaped + "\"}}", EnumSet.of(PushField.HEAD_COMMIT_MESSAGE))
+                .getHeadCommitMessage();
+    }
+
+    @Test
+    void extractsEveryField() throws PayloadParseException {
+        PushEvent event = parse(PUSH, ALL_FIELDS);
+
+        assertEquals("refs/heads/main", event.getRef());
+        assertEquals("mave/app", event.getRepositoryFullName());
+        assertEquals("2222222222222222222222222222222222222222", event.getHeadCommitId());
+        assertEquals("Fix the build", event.getHeadCommitMessage());
+        assertEquals("Mave", event.getHeadCommitAuthorName());
+        assertEquals(Set.of("src/New.java", "README.md", "src/Old.java"), event.getChangedPaths());
+        assertEquals(2, event.getListedCommits());
+        assertEquals("1111111111111111111111111111111111111111", event.getBefore());
+        assertEquals("2222222222222222222222222222222222222222", event.getAfter());
+        assertFalse(event.isForced());
+        assertTrue(event.hasAllChangedPaths());
+    }
+
+    @Test
+    void readsPayloadsSplitAcrossBuffers() throws PayloadParseException {
+        byte[] bytes = PUSH.replace("Fix the build", "Fix \\u00e9t\\ud83d\\ude00").getBytes(StandardCharsets.UTF_8);
+        // One byte per buffer splits every key, escape and multi-byte character
+        ByteBuffer[] chunks = new ByteBuffer[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chunks[i] = ByteBuffer.wrap(bytes, i, 1);
+        }
+
+        PushEvent event = new PushPayloadParser().parse(chunks, ALL_FIELDS);
+        assertEquals("Fix ét😀", event.getHeadCommitMessage());
+        assertEquals("mave/app", event.getRepositoryFullName());
+        assertEquals(3, event.getChangedPaths().size());
+    }
+
+    @Test
+    void decodesEscapes() throws PayloadParseException {
+        assertEquals("quote \" backslash \\ slash / tab \t newline \n", message(
+                "quote \\\" backslash \\\\ slash \\/ tab \\t newline \\n"));
+        assertEquals("\b\f\r", message("\\b\\f\\r"));
+        assertEquals("é€", message("\\u00e9\\u20AC"));
+        assertEquals("é€", message("é€"));
+    }
+
+    @Test
+    void decodesSurrogatePairs() throws PayloadParseException {
+        assertEquals("😀", message("\\ud83d\\ude00"));
+        assertEquals("😀x", message("\\uD83D\\uDE00x"));
+    }
+
+    @Test
+    void replacesUnpairedSurrogates() throws PayloadParseException {
+        assertEquals("�", message("\\ud83d"));
+        assertEquals("�a", message("\\ud83da"));
+        assertEquals("�\n", message("\\ud83d\\n"));
+        assertEquals("�A", message("\\ud83d\\u0041"));
+        assertEquals("�😀", message("\\ud83d\\ud83d\\ude00"));
+        assertEquals("�x", message("\\ude00x"));
+    }
+
+    @Test
+    void stopsOnceTheRequestedFieldsHaveBeenSeen() throws PayloadParseException {
+        // Everything after ref is cut off, which only matters if the parser reads on
+        String truncated = "{\"ref\":\"refs/heads/main\",\"commits\":[{\"added\":[\"unterminated";
+        PushEvent event = parse(truncated, EnumSet.of(PushField.REF));
+        assertEquals("refs/heads/main", event.getRef());
+        assertNull(event.getChangedPaths());
+
+        assertThrows(PayloadParseException.class, () -> parse(truncated, EnumSet.of(PushField.REF, PushField.CHANGED_PATHS)));
+    }
+
+    @Test
+    void leavesFieldsThePayloadLacksNull() throws PayloadParseException {
+        PushEvent deletion = parse("{\"ref\":\"refs/heads/gone\",\"before\":\"1111111111111111111111111111111111111111\","
+                + "\"after\":\"0000000000000000000000000000000000000000\",\"head_commit\":null,\"commits\":[],\"forced\":false}",
+                ALL_FIELDS);
+        assertNull(deletion.getHeadCommitId());
+        assertNull(deletion.getHeadCommitMessage());
+        assertNull(deletion.getRepositoryFullName());
+        assertTrue(deletion.isDeletion());
+        assertFalse(deletion.hasAllChangedPaths());
+    }
+
+    @Test
+    void refusesMalformedPayloads() {
+        assertThrows(PayloadParseException.class, () -> parse("[]", ALL_FIELDS));
+        assertThrows(PayloadParseException.class, () -> parse("{\"ref\" \"refs/heads/main\"}", ALL_FIELDS));
+        assertThrows(PayloadParseException.class, () -> message("\\x"));
+        assertThrows(PayloadParseException.class, () -> message("\\u12g4"));
+        assertThrows(PayloadParseException.class, () -> parse("{\"ref\":\"refs/heads/main", ALL_FIELDS));
+    }
+}
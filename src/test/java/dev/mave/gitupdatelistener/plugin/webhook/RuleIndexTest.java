@@ -0,0 +1,102 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import dev.mave.gitupdatelistener.plugin.model.TriggerRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleIndexTest {
+    private static TriggerRule rule(String repository, String refPattern) {
+        return new TriggerRule(repository, refPattern, "project", "Run " + refPattern);
+    }
+
+    /**
+     * Whether a single rule with the ref pattern matches a push to the ref
+     */
+    private static boolean matches(String refPattern, String ref) {
+        return !new RuleIndex(List.of(rule("", refPattern))).match("mave/app", ref).isEmpty();
+    }
+
+    @Test
+    void patternsWithoutRefsPrefixAreBranchNames() {
+        assertTrue(matches("main", "refs/heads/main"));
+        assertFalse(matches("main", "refs/tags/main"));
+        assertTrue(matches("refs/tags/v1", "refs/tags/v1"));
+        assertFalse(matches("main", "refs/heads/main2"));
+    }
+
+    @Test
+    void singleStarAndQuestionMarkStayWithinOneSegment() {
+        assertTrue(matches("release/*", "refs/heads/release/1.0"));
+        assertFalse(matches("release/*", "refs/heads/release/1.0/hotfix"));
+        assertTrue(matches("v?", "refs/heads/v1"));
+        assertFalse(matches("v?", "refs/heads/v10"));
+        assertFalse(matches("a?b", "refs/heads/a/b"));
+    }
+
+    @Test
+    void doubleStarSpansSegments() {
+        assertTrue(matches("feature/**", "refs/heads/feature/login/form"));
+        assertTrue(matches("**/hotfix", "refs/heads/hotfix"));
+        assertTrue(matches("**/hotfix", "refs/heads/release/1.0/hotfix"));
+        assertTrue(matches("refs/tags/**", "refs/tags/v1.0"));
+    }
+
+    @Test
+    void regexCharactersInPatternsAreLiteral() {
+        assertTrue(matches("release-1.0+", "refs/heads/release-1.0+"));
+        assertFalse(matches("release-1.0+", "refs/heads/release-1x00"));
+        assertTrue(matches("(fix)*", "refs/heads/(fix)-login"));
+    }
+
+    @Test
+    void matchesInConfiguredOrderAcrossLiteralAndGlobRules() {
+        TriggerRule glob = rule("", "*");
+        TriggerRule literal = rule("", "main");
+        TriggerRule otherBranch = rule("", "develop");
+        RuleIndex index = new RuleIndex(List.of(glob, otherBranch, literal));
+
+        assertEquals(List.of(glob, literal), index.match("mave/app", "refs/heads/main"));
+        assertEquals(List.of(), index.match("mave/app", null));
+    }
+
+    @Test
+    void repositoryIsMatchedIgnoringCase() {
+        TriggerRule anyRepository = rule(" ", "main");
+        TriggerRule app = rule("Mave/App", "main");
+        RuleIndex index = new RuleIndex(List.of(anyRepository, app));
+
+        assertEquals(List.of(anyRepository, app), index.match("mave/app", "refs/heads/main"));
+        assertEquals(List.of(anyRepository), index.match("mave/other", "refs/heads/main"));
+        assertEquals(List.of(anyRepository), index.match(null, "refs/heads/main"));
+    }
+
+    @Test
+    void skipsIncompleteRules() {
+        TriggerRule noConfiguration = new TriggerRule("", "main", "project", "");
+        TriggerRule noRef = rule("", "");
+        RuleIndex index = new RuleIndex(List.of(noConfiguration, noRef));
+
+        assertEquals(List.of(), index.match("mave/app", "refs/heads/main"));
+        assertEquals(List.of(noConfiguration, noRef), index.getRules());
+    }
+
+    @Test
+    void compilesPathFiltersOnlyForRulesWithPathGlobs() {
+        TriggerRule filtered = rule("", "main");
+        filtered.includePaths = "src/";
+        TriggerRule unfiltered = rule("", "develop");
+        RuleIndex index = new RuleIndex(List.of(filtered, unfiltered));
+
+        assertTrue(index.hasPathFilters());
+        assertNotNull(index.getPathFilter(filtered));
+        assertNull(index.getPathFilter(unfiltered));
+        assertFalse(new RuleIndex(List.of(unfiltered)).hasPathFilters());
+    }
+}
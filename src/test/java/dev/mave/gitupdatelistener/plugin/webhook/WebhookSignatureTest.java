@@ -0,0 +1,78 @@
+package dev.mave.gitupdatelistener.plugin.webhook;
+
+import dev.mave.gitupdatelistener.plugin.server.BufferPool;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequest;
+import dev.mave.gitupdatelistener.plugin.server.HttpRequestParser;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebhookSignatureTest {
+    /** The example from GitHub's documentation on validating webhook deliveries */
+    private static final String SECRET = "It's a Secret to Everybody";
+    private static final String BODY = "Hello, World!";
+    private static final String SIGNATURE = "sha256=757107ea0eb2509fc211221cce984b8a37570b6d7586c22c46f4379c8b043e17";
+
+    private static byte[] mac(WebhookSignature signature, String body) {
+        Mac mac = signature.getMac();
+        return mac.doFinal(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void acceptsTheSignatureGitHubComputes() {
+        WebhookSignature signature = new WebhookSignature(SECRET);
+        assertTrue(WebhookSignature.matches(SIGNATURE, mac(signature, BODY)));
+        // Hex digits and the prefix in either case
+        assertTrue(WebhookSignature.matches(SIGNATURE.toUpperCase(), mac(signature, BODY)));
+    }
+
+    @Test
+    void acceptsAMacComputedWhileTheBodyStreamsIn() throws IOException {
+        WebhookSignature signature = new WebhookSignature(SECRET);
+        String raw = "POST / HTTP/1.1\r\nX-Hub-Signature-256: " + SIGNATURE + "\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nHello\r\n8\r\n, World!\r\n0\r\n\r\n";
+        HttpRequestParser parser = new HttpRequestParser(new ByteArrayInputStream(raw.getBytes(StandardCharsets.US_ASCII)),
+                new ByteArrayOutputStream(), new BufferPool(4, false, 4));
+        parser.setBodyMac(signature.getMac());
+
+        try (HttpRequest request = parser.readRequest()) {
+            assertTrue(WebhookSignature.matches(request.getHeader(WebhookSignature.HEADER), request.getBodyMac()));
+        }
+    }
+
+    @Test
+    void rejectsAnotherBodyOrSecret() {
+        assertFalse(WebhookSignature.matches(SIGNATURE, mac(new WebhookSignature(SECRET), BODY + " ")));
+        assertFalse(WebhookSignature.matches(SIGNATURE, mac(new WebhookSignature("Another secret"), BODY)));
+    }
+
+    @Test
+    void rejectsMalformedSignatures() {
+        byte[] mac = mac(new WebhookSignature(SECRET), BODY);
+        assertFalse(WebhookSignature.matches(SIGNATURE.replace("sha256=", "sha1="), mac));
+        assertFalse(WebhookSignature.matches(SIGNATURE.substring(0, SIGNATURE.length() - 2), mac));
+        assertFalse(WebhookSignature.matches(SIGNATURE + "00", mac));
+        assertFalse(WebhookSignature.matches(SIGNATURE.substring(0, SIGNATURE.length() - 1) + "g", mac));
+        assertFalse(WebhookSignature.matches("", mac));
+    }
+
+    @Test
+    void rejectsAMissingSignatureOrMac() {
+        assertFalse(WebhookSignature.matches(null, mac(new WebhookSignature(SECRET), BODY)));
+        assertFalse(WebhookSignature.matches(SIGNATURE, null));
+    }
+
+    @Test
+    void resetsTheMacForEachBody() {
+        WebhookSignature signature = new WebhookSignature(SECRET);
+        signature.getMac().update("left over from a failed request".getBytes(StandardCharsets.UTF_8));
+        assertTrue(WebhookSignature.matches(SIGNATURE, mac(signature, BODY)));
+    }
+}